@@ -0,0 +1,157 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static tablut.Piece.*;
+
+/**
+ * JMH benchmarks of the Board operations used in the inner loop of the
+ * search, measured on several of the Bench positions.  Each benchmark
+ * leaves the board as it found it, so that every invocation measures
+ * the same work.
+ *
+ * @author chenyuanshan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BoardBenchmark {
+
+    /**
+     * The index in Bench.POSITIONS of the position measured: the
+     * initial position, an early and a late middle game.
+     */
+    @Param({ "0", "3", "7" })
+    public int position;
+
+    /**
+     * Set up the board, the moves made from it, the candidate moves
+     * checked for legality, and the squares checked for captures.
+     */
+    @Setup
+    public void setUp() {
+        _board = Bench.position(position);
+        _moves = _board.legalMoves(_board.turn());
+        _candidates = new ArrayList<>();
+        for (Square from : Square.SQUARE_LIST) {
+            if (_board.get(from).side() == _board.turn()) {
+                for (int dir = 0; dir < 4; dir += 1) {
+                    for (int step = 1; step < Board.SIZE; step += 1) {
+                        Square to = from.rookMove(dir, step);
+                        if (to != null) {
+                            _candidates.add(Move.mv(from, to));
+                        }
+                    }
+                }
+            }
+        }
+        _captureSquares = new ArrayList<>();
+        String before = _board.encodedBoard();
+        for (Square sq : Square.SQUARE_LIST) {
+            if (_board.get(sq) != EMPTY) {
+                Board copy = new Board(_board);
+                copy.docapture(sq, copy.get(sq));
+                if (copy.encodedBoard().equals(before)) {
+                    _captureSquares.add(sq);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make and undo the next of the legal moves.
+     */
+    @Benchmark
+    public Board makeMoveUndo() {
+        _board.makeMove(_moves.get(next(_moves.size())));
+        _board.undo();
+        return _board;
+    }
+
+    /**
+     * Generate the legal moves of the side to move.
+     */
+    @Benchmark
+    public List<Move> legalMoves() {
+        return _board.legalMoves(_board.turn());
+    }
+
+    /**
+     * Check for captures by the piece on the next of the squares where
+     * none are possible, so that the board does not change.
+     */
+    @Benchmark
+    public Board docapture() {
+        Square sq = _captureSquares.get(next(_captureSquares.size()));
+        _board.docapture(sq, _board.get(sq));
+        return _board;
+    }
+
+    /**
+     * Encode the board, as is done on every move to detect repetitions.
+     */
+    @Benchmark
+    public String encodedBoard() {
+        return _board.encodedBoard();
+    }
+
+    /**
+     * Check the legality of the next of the rook moves of the side to
+     * move, of which some are blocked.
+     */
+    @Benchmark
+    public boolean isLegal() {
+        return _board.isLegal(_candidates.get(next(_candidates.size())));
+    }
+
+    /**
+     * Return the next of N indices, in rotation.
+     */
+    private int next(int n) {
+        _next = _next + 1 < n ? _next + 1 : 0;
+        return _next;
+    }
+
+    /**
+     * The board measured.
+     */
+    private Board _board;
+
+    /**
+     * The legal moves from _board.
+     */
+    private List<Move> _moves;
+
+    /**
+     * All unobstructed and obstructed rook moves of the side to move.
+     */
+    private List<Move> _candidates;
+
+    /**
+     * The occupied squares from which docapture captures nothing.
+     */
+    private List<Square> _captureSquares;
+
+    /**
+     * The index last returned by next.
+     */
+    private int _next;
+
+}
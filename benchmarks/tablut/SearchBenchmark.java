@@ -0,0 +1,81 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the AI: static evaluation, and fixed-depth search
+ * from an empty transposition table (as in Bench, so that each
+ * invocation visits the same positions).
+ *
+ * @author chenyuanshan
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SearchBenchmark {
+
+    /**
+     * The index in Bench.POSITIONS of the position measured.
+     */
+    @Param({ "0", "3", "7" })
+    public int position;
+
+    /**
+     * The depth of the searches measured.
+     */
+    @Param({ "2" })
+    public int depth;
+
+    /**
+     * Set up the board and the AI.
+     */
+    @Setup
+    public void setUp() {
+        _board = Bench.position(position);
+        _ai = new AI();
+    }
+
+    /**
+     * Evaluate the board statically.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int staticScore() {
+        return _ai.staticScore(_board);
+    }
+
+    /**
+     * Search the board to the given depth.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Move findMove() {
+        return _ai.bestMove(_board, depth);
+    }
+
+    /**
+     * The board measured.
+     */
+    private Board _board;
+
+    /**
+     * The AI measured.
+     */
+    private AI _ai;
+
+}
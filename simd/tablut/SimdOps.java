@@ -0,0 +1,63 @@
+package tablut;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorOps operations, implemented with the incubating Vector API
+ * at the platform's preferred vector width.  Only usable when the
+ * jdk.incubator.vector module is present; see VectorOps.best.
+ *
+ * @author chenyuanshan
+ */
+class SimdOps extends VectorOps {
+
+    /**
+     * The vector shape used.
+     */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    @Override
+    void add(int[] acc, int[] row, int offset) {
+        int i, upper = SPECIES.loopBound(acc.length);
+        for (i = 0; i < upper; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, acc, i)
+                .add(IntVector.fromArray(SPECIES, row, offset + i))
+                .intoArray(acc, i);
+        }
+        for (; i < acc.length; i += 1) {
+            acc[i] += row[offset + i];
+        }
+    }
+
+    @Override
+    void subtract(int[] acc, int[] row, int offset) {
+        int i, upper = SPECIES.loopBound(acc.length);
+        for (i = 0; i < upper; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, acc, i)
+                .sub(IntVector.fromArray(SPECIES, row, offset + i))
+                .intoArray(acc, i);
+        }
+        for (; i < acc.length; i += 1) {
+            acc[i] -= row[offset + i];
+        }
+    }
+
+    @Override
+    int clippedDot(int[] acc, int[] weights, int clip) {
+        IntVector sum = IntVector.zero(SPECIES);
+        int i, upper = SPECIES.loopBound(acc.length);
+        for (i = 0; i < upper; i += SPECIES.length()) {
+            IntVector a = IntVector.fromArray(SPECIES, acc, i).max(0).min(clip);
+            sum = sum.add(a.mul(IntVector.fromArray(SPECIES, weights, i)));
+        }
+        int result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < acc.length; i += 1) {
+            result += Math.min(Math.max(acc[i], 0), clip) * weights[i];
+        }
+        return result;
+    }
+
+}
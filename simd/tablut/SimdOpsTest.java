@@ -0,0 +1,92 @@
+package tablut;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import ucb.junit.textui;
+
+/**
+ * Tests of SimdOps, which must be run with the jdk.incubator.vector
+ * module present.
+ *
+ * @author chenyuanshan
+ */
+public class SimdOpsTest {
+
+    /**
+     * Run the JUnit tests in this class.
+     */
+    public static void main(String[] ignored) {
+        textui.runClasses(SimdOpsTest.class);
+    }
+
+    /**
+     * Test that VectorOps.best chooses SimdOps when the module is
+     * present.
+     */
+    @Test
+    public void besttest() {
+        assertTrue(VectorOps.best() instanceof SimdOps);
+    }
+
+    /**
+     * Test that SimdOps computes the same results as the scalar
+     * VectorOps, on lengths that do and do not fill whole vectors and
+     * at various offsets into the row.
+     */
+    @Test
+    public void equivalencetest() {
+        VectorOps scalar = new VectorOps(), simd = new SimdOps();
+        Random r = new Random(42);
+        for (int len = 0; len <= MAX_LENGTH; len += 1) {
+            for (int offset : new int[] { 0, 1, len }) {
+                int[] row = randomInts(r, offset + len),
+                    weights = randomInts(r, len),
+                    acc1 = randomInts(r, len),
+                    acc2 = acc1.clone();
+                scalar.add(acc1, row, offset);
+                simd.add(acc2, row, offset);
+                assertArrayEquals(acc1, acc2);
+                scalar.subtract(acc1, row, offset);
+                simd.subtract(acc2, row, offset);
+                scalar.subtract(acc1, row, 0);
+                simd.subtract(acc2, row, 0);
+                assertArrayEquals(acc1, acc2);
+                assertEquals(scalar.clippedDot(acc1, weights, CLIP),
+                             simd.clippedDot(acc2, weights, CLIP));
+            }
+        }
+    }
+
+    /**
+     * Return an array of N random integers in the range -RANGE .. RANGE,
+     * using R.
+     */
+    private static int[] randomInts(Random r, int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = r.nextInt(2 * RANGE + 1) - RANGE;
+        }
+        return result;
+    }
+
+    /**
+     * The largest vector length tested, which exceeds several widths of
+     * the widest vectors.
+     */
+    private static final int MAX_LENGTH = 70;
+
+    /**
+     * Bound on the magnitudes of random elements.
+     */
+    private static final int RANGE = 300;
+
+    /**
+     * The clipping bound used for clippedDot.
+     */
+    private static final int CLIP = 127;
+
+}
@@ -1,5 +1,12 @@
 package tablut;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 import static java.lang.Math.*;
 
 import static tablut.Piece.*;
@@ -15,51 +22,142 @@ class AI extends Player {
      * A position-score magnitude indicating a win (for white if positive,
      * black if negative).
      */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
     /**
      * A position-score magnitude indicating a forced win in a subsequent
      * move.  This differs from WINNING_VALUE to avoid putting off wins.
      */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
     /**
      * A magnitude greater than a normal value.
      */
     private static final int INFTY = Integer.MAX_VALUE;
 
     /**
-     * A number that used to countdown the piece.
+     * The number of nine.
      */
-    private static final int TWENTY = 20;
+    private static final int NINE = 9;
 
     /**
-     * A number that used to calculate the king.
+     * Indices of the evaluation features, as in Weights.NAMES.
      */
-    private static final int FORTY = 40;
+    static final int
+        KING_ATTACKERS = 0, KING_DISTANCE = 1, WHITE_LOST = 2,
+        BLACK_PIECES = 3;
 
     /**
-     * The number of nine.
+     * The maximum depth to which we search when playing with a clock,
+     * and while pondering.
      */
-    private static final int NINE = 9;
+    private static final int MAX_TIMED_DEPTH = 64;
+
+    /**
+     * Milliseconds of a clock that we never plan to use.
+     */
+    private static final long SAFETY_MARGIN = 100;
+
+    /**
+     * The number of moves we expect still to make when there is no
+     * closer move limit.
+     */
+    private static final int EXPECTED_MOVES_LEFT = 30;
+
+    /**
+     * The hard time limit for a move as a multiple of the soft budget.
+     */
+    private static final long HARD_BUDGET_FACTOR = 3;
+
+    /**
+     * Scales applied to the soft budget when the best move has just
+     * changed, and when it has been the same for STABLE_ITERATIONS
+     * iterations.
+     */
+    private static final double UNSTABLE_FACTOR = 1.5, STABLE_FACTOR = 0.5;
 
+    /**
+     * The number of iterations without a change of best move after which
+     * the search counts as stable.
+     */
+    private static final int STABLE_ITERATIONS = 3;
+
+    /**
+     * We do not start an iteration after using this fraction of the
+     * (scaled) soft budget, since it would probably not finish in time.
+     */
+    private static final double NEXT_ITERATION_FRACTION = 0.5;
+
+    /**
+     * Mask on the node count selecting how often the search checks the
+     * time.
+     */
+    private static final long CLOCK_CHECK_MASK = 0xff;
+
+    /**
+     * When at most this many pieces (of both sides) remain, we first try
+     * to prove a forced win with a Solver.
+     */
+    static final int SOLVER_PIECES = 8;
+
+    /**
+     * The number of positions the Solver may visit when used from
+     * findMove.
+     */
+    private static final long SOLVER_NODES = 2000;
+
+    /**
+     * The log (base 2) of the number of table entries of the Solver used
+     * from findMove: enough for SOLVER_NODES positions, so that each
+     * endgame move allocates tens of kilobytes rather than megabytes.
+     */
+    private static final int SOLVER_LOG_SIZE = 12;
 
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
      */
     AI() {
-        this(null, null);
+        this(Weights.DEFAULT);
+    }
+
+    /**
+     * A new AI with no piece or controller that evaluates positions
+     * with WEIGHTS (intended to produce a template).
+     */
+    AI(Weights weights) {
+        this(weights, null);
+    }
+
+    /**
+     * A new AI with no piece or controller that evaluates positions
+     * with NETWORK, if it is not null, and otherwise with WEIGHTS
+     * (intended to produce a template).
+     */
+    AI(Weights weights, NNUE network) {
+        this(null, null, weights, network);
     }
 
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, Weights.DEFAULT, null);
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER that evaluates
+     * positions with NETWORK, if it is not null, and otherwise with
+     * WEIGHTS.
+     */
+    AI(Piece piece, Controller controller, Weights weights,
+       NNUE network) {
         super(piece, controller);
+        _weights = weights;
+        _network = network;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(piece, controller, _weights, _network);
     }
 
     @Override
@@ -67,12 +165,41 @@ class AI extends Player {
         if (board().turn() != myPiece() || board().winner() != null) {
             return "No legal move";
         } else {
+            _stopRequest = NO_STOP;
+            Events.MoveEvent event = null;
+            if (Events.enabled()) {
+                event = new Events.MoveEvent();
+                event.begin();
+            }
             Move rst = findMove();
+            if (_stopRequest == CANCEL) {
+                return null;
+            }
+            if (event != null) {
+                event.side = myPiece().toName();
+                event.move = rst.toString();
+                event.depth = _stats.depth;
+                event.score = _stats.score;
+                event.nodes = _stats.nodes;
+                event.ponderHit = _stats.ponderHit;
+                event.commit();
+            }
+            Metrics.SEARCH.addThinkTime(_stats.millis());
             _controller.reportMove(rst);
+            _controller.reportStats(new SearchStats(_stats));
+            if (_controller.pondering()) {
+                startPondering(rst);
+            }
             return rst.toString();
         }
     }
 
+    @Override
+    void stopMove(boolean play) {
+        _stopRequest = play ? PLAY : CANCEL;
+        _stopped = true;
+    }
+
     @Override
     boolean isManual() {
         return false;
@@ -80,18 +207,261 @@ class AI extends Player {
 
     /**
      * Return a move for me from the current position, assuming there
-     * is a move.
+     * is a move.  If we have been pondering the current position, carry
+     * on the search from the depth reached while pondering, counting the
+     * time spent pondering it as part of the time for this move.
      */
     private Move findMove() {
-        Board b = new Board(board());
-        if (b.turn() == BLACK) {
-            findMove(b, maxDepth(b), true, -1,
-                    Integer.MIN_VALUE, Integer.MAX_VALUE);
+        stopPondering();
+        _stats.start();
+        Board b = searchBoard(board());
+        int depth;
+        Clock clock = _controller.clock(myPiece());
+        if (clock == null) {
+            depth = maxDepth(b);
+            _softBudget = _hardDeadline = Long.MAX_VALUE;
+        } else {
+            depth = MAX_TIMED_DEPTH;
+            setTimeLimits(clock, b);
+        }
+        boolean ponderHit = _ponderMove != null
+            && _ponderKey == b.hashKey() && b.isLegal(_ponderMove);
+        if (!ponderHit && pieceCount(b) <= SOLVER_PIECES) {
+            Solver solver = new Solver(SOLVER_NODES, SOLVER_LOG_SIZE);
+            if (solver.solve(b) == Solver.PROVEN
+                && !solver.line().isEmpty()) {
+                stopStats();
+                return solver.line().get(0);
+            }
+        }
+        _stopped = _stopRequest != NO_STOP;
+        _mailbox = _controller.searchInfo();
+        _variation = null;
+        _info = _mailbox == null ? null : _mailbox::post;
+        Move best;
+        if (ponderHit) {
+            _stats.ponderHit = true;
+            _stats.ponderDepth = _ponderDepth;
+            _searchStart = _ponderStart;
+            best = search(b, depth, _ponderMove, _ponderDepth, _ponderScore);
         } else {
-            findMove(b, maxDepth(b), true, 1,
-                    Integer.MIN_VALUE, Integer.MAX_VALUE);
+            best = search(b, depth);
+        }
+        _ponderMove = _ponderReply = null;
+        _info = null;
+        _mailbox = null;
+        _stats.depth = _searchedDepth;
+        _stats.score = _searchedScore;
+        stopStats();
+        if (best == null) {
+            best = b.legalMoves(b.turn()).get(0);
         }
-        return _lastFoundMove;
+        return best;
+    }
+
+    /**
+     * Search BOARD by iterative deepening until MAXNODES positions have
+     * been visited or MILLIS milliseconds have passed, and return the
+     * best move found by the last completed iteration, or null if none
+     * completed.  The statistics of the search, including the value it
+     * found, are then available from stats().  This does not use my
+     * controller, and so serves for offline analysis.
+     */
+    Move bestMove(Board board, long maxNodes, long millis) {
+        return bestMove(board, maxNodes, millis, MAX_TIMED_DEPTH, null);
+    }
+
+    /**
+     * As for bestMove(BOARD, MAXNODES, MILLIS), but also passing the
+     * progress of the search to PROGRESS after each completed iteration.
+     */
+    Move bestMove(Board board, long maxNodes, long millis,
+                  Consumer<SearchInfo> progress) {
+        return bestMove(board, maxNodes, millis, MAX_TIMED_DEPTH, progress);
+    }
+
+    /**
+     * As for bestMove(BOARD, MAXNODES, MILLIS, PROGRESS), but searching
+     * to at most MAXDEPTH.  PROGRESS may be null.
+     */
+    private Move bestMove(Board board, long maxNodes, long millis,
+                          int maxDepth, Consumer<SearchInfo> progress) {
+        _stats.start();
+        _stopped = false;
+        _nodeLimit = maxNodes;
+        _softBudget = millis;
+        _hardDeadline = millis == Long.MAX_VALUE ? Long.MAX_VALUE
+            : System.currentTimeMillis() + millis;
+        _info = progress;
+        Move best = search(searchBoard(board), maxDepth);
+        _info = null;
+        _nodeLimit = Long.MAX_VALUE;
+        _stats.depth = _searchedDepth;
+        _stats.score = _searchedScore;
+        stopStats();
+        return best;
+    }
+
+    /**
+     * Search BOARD by iterative deepening to exactly DEPTH, starting
+     * with an empty transposition table, and return the best move found,
+     * or null if there is none.  With no time limit and no history, the
+     * number of positions visited depends only on BOARD and DEPTH, so
+     * that the statistics then available from stats() serve as a
+     * signature of the behavior of the search.
+     */
+    Move bestMove(Board board, int depth) {
+        _table.clear();
+        return bestMove(board, Long.MAX_VALUE, Long.MAX_VALUE, depth, null);
+    }
+
+    /**
+     * Forget the positions recorded by my earlier searches, so that my
+     * later searches depend only on their own positions and budgets.
+     */
+    void clearTable() {
+        _table.clear();
+    }
+
+    /**
+     * Return the value that my searches give a position won by WINNER:
+     * WINNING_VALUE for white, and the least value for black.
+     */
+    static int winningValue(Piece winner) {
+        return winner == WHITE ? WINNING_VALUE : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Stop the timing of the current search in _stats, and add its
+     * counts to the shared metrics.
+     */
+    private void stopStats() {
+        _stats.stop();
+        Metrics.SEARCH.add(_stats);
+    }
+
+    /**
+     * Return a copy of the statistics of my last search.
+     */
+    SearchStats stats() {
+        return new SearchStats(_stats);
+    }
+
+    /**
+     * Return the number of pieces on BOARD.
+     */
+    private static int pieceCount(Board board) {
+        int result = 0;
+        for (Square s : Square.SQUARE_LIST) {
+            if (board.get(s) != EMPTY) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set _softBudget and _hardDeadline for a move on BOARD by the side
+     * whose clock is CLOCK.  The time left, less a safety margin, is
+     * shared among the moves we expect still to make, taking account of
+     * any move limit, and the increment is added.
+     */
+    private void setTimeLimits(Clock clock, Board board) {
+        long usable = max(0, clock.remaining() - SAFETY_MARGIN);
+        _softBudget = moveBudget(clock, board);
+        _hardDeadline = System.currentTimeMillis()
+            + min(_softBudget * HARD_BUDGET_FACTOR, usable);
+    }
+
+    /**
+     * Return the number of milliseconds that a move on BOARD by the side
+     * whose clock is CLOCK should normally take.  This is the soft budget
+     * of setTimeLimits, and serves other players that share out their
+     * time in the same way.
+     */
+    static long moveBudget(Clock clock, Board board) {
+        long usable = max(0, clock.remaining() - SAFETY_MARGIN);
+        int movesLeft = EXPECTED_MOVES_LEFT;
+        if (board.moveLimit() > 0) {
+            movesLeft = min(movesLeft,
+                            max(1, board.moveLimit() - board.moveCount() / 2));
+        }
+        return min(usable / movesLeft + clock.increment(), usable / 2);
+    }
+
+    /**
+     * Return true iff there is not enough of _softBudget left to start
+     * another iteration of search, given that the best move has stayed
+     * the same for the last STABLE iterations.  An unstable search gets
+     * more time, and a stable one less.
+     */
+    private boolean outOfTime(int stable) {
+        double scale = stable == 0 ? UNSTABLE_FACTOR
+            : stable >= STABLE_ITERATIONS ? STABLE_FACTOR : 1.0;
+        long used = System.currentTimeMillis() - _searchStart;
+        return used >= _softBudget * scale * NEXT_ITERATION_FRACTION;
+    }
+
+    /**
+     * Search BOARD by iterative deepening to depths 1 through MAXDEPTH,
+     * stopping early if _stopped is set or the time budget runs out.
+     * Return the best move found by the deepest completed iteration,
+     * whose depth and value are left in _searchedDepth and
+     * _searchedScore, or null if none completed.
+     */
+    private Move search(Board board, int maxDepth) {
+        _searchStart = System.currentTimeMillis();
+        return search(board, maxDepth, null, 0, 0);
+    }
+
+    /**
+     * As for search(BOARD, MAXDEPTH), but carrying on a search of BOARD
+     * begun at time _searchStart that has completed depth FROMDEPTH,
+     * finding best move BEST with value SCORE, from FROMDEPTH + 1.  The
+     * entries of _table left by the earlier search are reused, and its
+     * time counts against the budget.
+     */
+    private Move search(Board board, int maxDepth, Move best,
+                        int fromDepth, int score) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        int stable = 0;
+        _searchedDepth = fromDepth;
+        _searchedScore = score;
+        if (fromDepth > 0 && _info != null) {
+            publish(board, fromDepth, score);
+        }
+        for (int depth = fromDepth + 1; depth <= maxDepth; depth += 1) {
+            if (_searchedDepth > 0
+                && (outOfTime(stable) || _stats.nodes >= _nodeLimit)) {
+                break;
+            }
+            _lastFoundMove = null;
+            Events.IterationEvent event = null;
+            if (Events.enabled()) {
+                event = new Events.IterationEvent();
+                event.begin();
+            }
+            int value = findMove(board, depth, true, sense,
+                                 Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (_stopped) {
+                break;
+            }
+            stable = _lastFoundMove == best ? stable + 1 : 0;
+            best = _lastFoundMove;
+            if (event != null) {
+                event.depth = depth;
+                event.score = value;
+                event.nodes = _stats.nodes;
+                event.bestMove = String.valueOf(best);
+                event.commit();
+            }
+            _searchedDepth = depth;
+            _searchedScore = value;
+            if (_info != null) {
+                publish(board, depth, value);
+            }
+        }
+        return best;
     }
 
     /**
@@ -106,66 +476,278 @@ class AI extends Player {
      * should have maximal value or have value > BETA if SENSE==1,
      * and minimal value or value < ALPHA if SENSE==-1. Searches up to
      * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * of the board value and does not set _lastMoveFound.  Results are
+     * recorded in and reused from _table.  Returns 0 without recording
+     * anything once _stopped is set.
      */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
-        if (sense == 1) {
-            if (depth == 0 || board.gameOver()) {
-                return staticScore(board);
-            }
-            int bestSoFar = Integer.MIN_VALUE;
-            for (Move m : board.legalMoves(WHITE)) {
-                board.makeMove(m);
-                if (board.repeatedPosition()) {
-                    board.undo(); continue;
+        _stats.nodes += 1;
+        if (depth == 0 || board.gameOver()) {
+            _stats.evaluations += 1;
+            return staticScore(board);
+        }
+        if ((_stats.nodes & CLOCK_CHECK_MASK) == 0 && _searchedDepth > 0) {
+            checkProgress();
+        }
+        if (_stopped) {
+            return 0;
+        }
+        long key = board.hashKey();
+        int slot = _table.find(key);
+        Move hashMove = null;
+        _stats.hashProbes += 1;
+        if (slot >= 0) {
+            _stats.hashHits += 1;
+            hashMove = _table.move(slot);
+            if (!saveMove && _table.depth(slot) >= depth) {
+                int score = _table.score(slot);
+                switch (_table.bound(slot)) {
+                case TranspositionTable.LOWER:
+                    alpha = max(alpha, score);
+                    break;
+                case TranspositionTable.UPPER:
+                    beta = min(beta, score);
+                    break;
+                default:
+                    return score;
                 }
-                if (board.winner() == WHITE) {
-                    _lastFoundMove = m;
-                    bestSoFar = WINNING_VALUE; break;
+                if (alpha >= beta) {
+                    return score;
                 }
-                int t = findMove(board, depth - 1, false,
-                        -1 * sense, alpha, beta);
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
+        Piece side = sense == 1 ? WHITE : BLACK;
+        int bestSoFar = sense == 1 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        Move bestMove = null;
+        List<Move> moves = board.legalMoves(side);
+        if (hashMove != null && moves.remove(hashMove)) {
+            moves.add(0, hashMove);
+        }
+        boolean first = true;
+        for (Move m : moves) {
+            board.makeMove(m);
+            if (board.repeatedPosition()) {
+                board.undo(); continue;
+            }
+            if (board.winner() == side) {
                 board.undo();
-                if (t >= bestSoFar) {
-                    bestSoFar = t; alpha = max(alpha, bestSoFar);
-                    if (saveMove) {
-                        _lastFoundMove = m;
-                    }
-                    if (alpha >= beta) {
-                        break;
+                bestMove = m;
+                bestSoFar = sense == 1 ? WINNING_VALUE : Integer.MIN_VALUE;
+                break;
+            }
+            int t = findMove(board, depth - 1, false,
+                    -1 * sense, alpha, beta);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (sense == 1 ? t >= bestSoFar : t <= bestSoFar) {
+                bestSoFar = t; bestMove = m;
+                if (sense == 1) {
+                    alpha = max(alpha, bestSoFar);
+                } else {
+                    beta = min(beta, bestSoFar);
+                }
+                if (alpha >= beta) {
+                    _stats.cutoffs += 1;
+                    if (first) {
+                        _stats.firstMoveCutoffs += 1;
                     }
+                    break;
                 }
             }
-            return bestSoFar;
-        } else {
-            if (depth == 0 || board.gameOver()) {
-                return staticScore(board);
+            first = false;
+        }
+        if (bestMove != null) {
+            int bound = bestSoFar <= alpha0 ? TranspositionTable.UPPER
+                : bestSoFar >= beta0 ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            _table.store(key, depth, bestSoFar, bound, bestMove);
+            if (saveMove) {
+                _lastFoundMove = bestMove;
             }
-            int bestSoFara = Integer.MAX_VALUE;
-            for (Move mv : board.legalMoves(BLACK)) {
-                board.makeMove(mv);
+        }
+        return bestSoFar;
+    }
+
+    /**
+     * Analyze BOARD to depths 1 through MAXDEPTH, calling REPORT after
+     * each depth with that depth and the best NUMLINES variations found,
+     * best first.  The variations share _table, so positions common to
+     * several of them are searched once.
+     */
+    void analyze(Board board, int numLines, int maxDepth,
+                 BiConsumer<Integer, List<Variation>> report) {
+        board = searchBoard(board);
+        _stopped = false;
+        _softBudget = _hardDeadline = Long.MAX_VALUE;
+        _stats.start();
+        Piece side = board.turn();
+        int sense = side == WHITE ? 1 : -1;
+        List<Move> moves = board.legalMoves(side);
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            List<Variation> lines = new ArrayList<>();
+            for (Move m : moves) {
+                int bound = lines.size() < numLines
+                    ? (sense == 1 ? Integer.MIN_VALUE : Integer.MAX_VALUE)
+                    : lines.get(numLines - 1).score();
+                board.makeMove(m);
                 if (board.repeatedPosition()) {
-                    board.undo(); continue;
+                    board.undo();
+                    continue;
                 }
-                if (board.winner() == BLACK) {
-                    _lastFoundMove = mv;
-                    bestSoFara = Integer.MIN_VALUE; break;
+                int score;
+                if (board.winner() == side) {
+                    score = sense == 1 ? WINNING_VALUE : Integer.MIN_VALUE;
+                } else if (sense == 1) {
+                    score = findMove(board, depth - 1, false, -1,
+                                     bound, Integer.MAX_VALUE);
+                } else {
+                    score = findMove(board, depth - 1, false, 1,
+                                     Integer.MIN_VALUE, bound);
                 }
-                int ta = findMove(board, depth - 1, false,
-                        -1 * sense, alpha, beta);
+                List<Move> pv = principalVariation(board, depth - 1);
                 board.undo();
-                if (ta <= bestSoFara) {
-                    bestSoFara = ta; beta = min(beta, bestSoFara);
-                    if (saveMove) {
-                        _lastFoundMove = mv;
+                if (sense == 1 ? score > bound : score < bound) {
+                    pv.add(0, m);
+                    int k;
+                    for (k = lines.size(); k > 0; k -= 1) {
+                        int other = lines.get(k - 1).score();
+                        if (sense == 1 ? other >= score : other <= score) {
+                            break;
+                        }
                     }
-                    if (beta <= alpha) {
-                        break;
+                    lines.add(k, new Variation(score, pv));
+                    if (lines.size() > numLines) {
+                        lines.remove(numLines);
                     }
                 }
             }
-            return bestSoFara;
+            for (int k = lines.size() - 1; k >= 0; k -= 1) {
+                moves.remove(lines.get(k).move());
+                moves.add(0, lines.get(k).move());
+            }
+            _stats.depth = depth;
+            report.accept(depth, lines);
+        }
+        stopStats();
+    }
+
+    /**
+     * Pass the progress of the search of BOARD, which has completed
+     * depth DEPTH with value SCORE, to _info.
+     */
+    private void publish(Board board, int depth, int score) {
+        List<Move> pv = principalVariation(board, depth);
+        if (!pv.isEmpty()) {
+            _variation = new Variation(score, pv);
+            _info.accept(new SearchInfo(depth, _variation, _stats.nodes,
+                                        System.currentTimeMillis()
+                                        - _searchStart));
+        }
+    }
+
+    /**
+     * Called periodically during an iteration of search after the first:
+     * stop the search if it has used up its budget of positions or
+     * time, and otherwise post its progress (the last variation
+     * published, with the positions visited and time taken so far) to
+     * _mailbox, if there is one.
+     */
+    private void checkProgress() {
+        long now = System.currentTimeMillis();
+        if (_stats.nodes >= _nodeLimit || now >= _hardDeadline) {
+            _stopped = true;
+        } else if (_mailbox != null && _variation != null) {
+            _mailbox.post(new SearchInfo(_searchedDepth, _variation,
+                                         _stats.nodes, now - _searchStart));
+        }
+    }
+
+    /**
+     * Return the best line of play from BOARD recorded in _table, up to
+     * DEPTH moves long.  BOARD is unchanged on return.
+     */
+    private List<Move> principalVariation(Board board, int depth) {
+        List<Move> pv = new ArrayList<>();
+        while (pv.size() < depth && !board.gameOver()) {
+            int slot = _table.find(board.hashKey());
+            if (slot < 0 || !board.isLegal(_table.move(slot))) {
+                break;
+            }
+            pv.add(_table.move(slot));
+            board.makeMove(_table.move(slot));
+        }
+        for (int k = pv.size(); k > 0; k -= 1) {
+            board.undo();
+        }
+        return pv;
+    }
+
+    /**
+     * Start searching, on another thread, the position that would
+     * arise if MOVE were made on the current board and the opponent
+     * then made the reply we expect.  The search fills _table and
+     * leaves its result in _ponderMove.  It runs on PONDERERS, never on
+     * my controller's search pool.
+     */
+    private void startPondering(Move move) {
+        Board b = searchBoard(board());
+        b.makeMove(move);
+        _ponderMove = _ponderReply = null;
+        if (b.gameOver()) {
+            return;
+        }
+        _stopped = false;
+        _softBudget = _hardDeadline = Long.MAX_VALUE;
+        _ponderer = new BackgroundTask(PONDERERS, () -> ponder(b));
+    }
+
+    /**
+     * Ponder position BOARD, in which the opponent is to move: guess
+     * the opponent's reply and search the resulting position to
+     * successively greater depths until _stopped is set (or, rarely,
+     * MAX_TIMED_DEPTH is reached).
+     */
+    private void ponder(Board board) {
+        int slot = _table.find(board.hashKey());
+        Move reply = slot >= 0 ? _table.move(slot) : search(board, 1);
+        if (reply == null || _stopped) {
+            return;
+        }
+        board.makeMove(reply);
+        if (board.gameOver()) {
+            return;
+        }
+        _ponderReply = reply;
+        _ponderKey = board.hashKey();
+        _ponderMove = search(board, MAX_TIMED_DEPTH);
+        _ponderStart = _searchStart;
+        _ponderDepth = _searchedDepth;
+        _ponderScore = _searchedScore;
+    }
+
+    /**
+     * Return the opponent's reply whose position I am pondering, or null
+     * if I am not pondering or have not yet chosen it.
+     */
+    Move ponderReply() {
+        return _ponderReply;
+    }
+
+    /**
+     * Stop any search in progress on the pondering thread and wait for
+     * it to finish.  Pondering that has not yet started is cancelled,
+     * so that a search waiting on a busy pool cannot wait on itself.
+     */
+    @Override
+    void stopPondering() {
+        if (_ponderer != null) {
+            _stopped = true;
+            _ponderer.finish();
+            _ponderer = null;
         }
     }
 
@@ -177,33 +759,54 @@ class AI extends Player {
         return 1;
     }
 
+    /**
+     * Return a copy of MODEL for searching, which keeps an accumulator
+     * for my network up to date if I have one.
+     */
+    private Board searchBoard(Board model) {
+        Board result = new Board(model);
+        if (_network != null) {
+            result.setAccumulator(_network.newAccumulator(result));
+        }
+        return result;
+    }
+
     /**
      * Return a heuristic value for BOARD.
      */
-    private int staticScore(Board board) {
-        int result = 0;
+    int staticScore(Board board) {
         if (board.kingPosition() == null) {
             return Integer.MIN_VALUE;
         }
         if (board.kingPosition().isEdge()) {
             return WINNING_VALUE;
         }
+        if (_network != null && board.accumulator() != null) {
+            return _network.evaluate(board.accumulator());
+        }
+        features(board, _features);
+        return _weights.score(_features);
+    }
 
-
+    /**
+     * Set FEATURES to the values for BOARD, which must contain a king, of
+     * the features named in Weights.NAMES: the number of attackers next
+     * to the king, the king's distance measure, the number of defenders
+     * lost, and the number of attackers.
+     */
+    static void features(Board board, int[] features) {
         Square king = board.kingPosition();
 
         int count = 0;
         for (int dir = 0; dir < 4; dir = dir + 1) {
-            Square adjacent = board.kingPosition().rookMove(dir, 1);
+            Square adjacent = king.rookMove(dir, 1);
             if (board.returnboard().get(adjacent).side() == BLACK) {
                 count = count + 1;
             }
         }
-        result = result - count * FORTY;
         int coldis = max(abs(NINE - king.col()), king.col());
         int rowdis = max(abs(NINE - king.col()), king.row());
         int dis = max(coldis, rowdis);
-        result = result + dis * FORTY;
 
         int blacknumber = 0;
         int whitenumber = 0;
@@ -214,11 +817,132 @@ class AI extends Player {
                 whitenumber = whitenumber + 1;
             }
         }
-        int whitegone = NINE - whitenumber;
-        result = result - whitegone * TWENTY;
-        result = result - blacknumber * TWENTY;
-        return result;
+        features[KING_ATTACKERS] = count;
+        features[KING_DISTANCE] = dis;
+        features[WHITE_LOST] = NINE - whitenumber;
+        features[BLACK_PIECES] = blacknumber;
     }
 
+    /**
+     * The weights of my evaluation features.
+     */
+    private final Weights _weights;
+
+    /**
+     * The network evaluating positions in place of _weights, or null.
+     */
+    private final NNUE _network;
+
+    /**
+     * Scratch space for the features of the position being evaluated.
+     */
+    private final int[] _features = new int[Weights.NUM_FEATURES];
+
+    /**
+     * Search results saved between moves, including those found while
+     * pondering.
+     */
+    private final TranspositionTable _table = new TranspositionTable();
+
+    /**
+     * Counters for the current search.
+     */
+    private final SearchStats _stats = new SearchStats();
+
+    /**
+     * Set to abandon the search in progress.
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * Values of _stopRequest: myMove is not asked to stop, or is asked
+     * to play its best move so far, or to return null.
+     */
+    private static final int NO_STOP = 0, PLAY = 1, CANCEL = 2;
+
+    /**
+     * The request made by stopMove during the current call of myMove.
+     */
+    private volatile int _stopRequest;
+
+    /**
+     * The time at which the current search started, its soft time
+     * budget in milliseconds, and the time at which it must stop.
+     */
+    private long _searchStart, _softBudget, _hardDeadline;
+
+    /**
+     * The receiver (such as the mailbox of my controller) of the
+     * progress of the current search, or null if it is not wanted.
+     */
+    private Consumer<SearchInfo> _info;
+
+    /**
+     * The mailbox to which the current search posts its progress during
+     * iterations, or null if it does not.
+     */
+    private Mailbox<SearchInfo> _mailbox;
+
+    /**
+     * The variation last passed to _info, or null.
+     */
+    private Variation _variation;
+
+    /**
+     * The number of positions after which a search stops, once it has
+     * completed an iteration.
+     */
+    private long _nodeLimit = Long.MAX_VALUE;
+
+    /**
+     * The depth of the last completed iteration of search, and the value
+     * it found.
+     */
+    private int _searchedDepth, _searchedScore;
+
+    /**
+     * The pool on which AIs ponder.  (Controllers with a search pool do
+     * not allow pondering, which would hold one of its threads for as
+     * long as the opponent thinks.)
+     */
+    private static final ExecutorService PONDERERS =
+        Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ponder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * The task running ponder, or null if we are not pondering.
+     */
+    private BackgroundTask _ponderer;
+
+    /**
+     * The best move found while pondering, or null.  It is the reply to
+     * the position whose hash is _ponderKey, searched from time
+     * _ponderStart to _ponderDepth, where its value was _ponderScore.
+     */
+    private Move _ponderMove;
+
+    /**
+     * The opponent's reply whose position I am pondering, or null.
+     */
+    private volatile Move _ponderReply;
+
+    /**
+     * The hash key of the position searched while pondering.
+     */
+    private long _ponderKey;
+
+    /**
+     * The time at which the search of the position _ponderKey began.
+     */
+    private long _ponderStart;
+
+    /**
+     * The depth of the last completed ponder iteration, and the value
+     * it found.
+     */
+    private int _ponderDepth, _ponderScore;
 
 }
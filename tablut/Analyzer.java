@@ -0,0 +1,231 @@
+package tablut;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+
+/**
+ * An offline analyzer of archived games.  It streams the games of a
+ * game record file (see GameRecord), replays each into a Board, and
+ * searches every position of it with an AI at a fixed budget of nodes
+ * or time, writing for each move the move played, the best move found,
+ * the value of the position, the value lost by the move played, and a
+ * blunder flag if that loss is at least a threshold.  Games are
+ * analyzed in parallel on a pool of threads, each with its own AI, but
+ * only a bounded window of them is in progress at once, and annotations
+ * are written in the order of the games as soon as each is done, so that
+ * memory use does not depend on the size of the archive.
+ *
+ * @author chenyuanshan
+ */
+public class Analyzer {
+
+    /**
+     * The default number of positions searched per position analyzed.
+     */
+    static final long DEFAULT_NODES = 20000;
+
+    /**
+     * The default loss of value marking a move as a blunder.
+     */
+    static final long DEFAULT_BLUNDER = 200;
+
+    /**
+     * Games in progress per thread.
+     */
+    static final int GAMES_PER_THREAD = 2;
+
+    /**
+     * Analyze as directed by ARGS: --threads=N sets the number of
+     * threads (default the number of processors), --nodes=N or
+     * --time=MS the budget of each search (default DEFAULT_NODES
+     * nodes), --blunder=N the loss marking a blunder, --weights=FILE and
+     * --nnue=FILE the evaluator (as for Main), and the two remaining
+     * arguments name the game record file and the annotation file.
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--threads={0,1} --nodes={0,1} --time={0,1}"
+                            + " --blunder={0,1} --weights={0,1}"
+                            + " --nnue={0,1} --={2}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Analyzer [--threads=N]"
+                               + " [--nodes=N | --time=MS] [--blunder=N]"
+                               + " [--weights=FILE] [--nnue=FILE]"
+                               + " RECORDS OUTPUT");
+            System.exit(1);
+        }
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            long nodes = DEFAULT_NODES, millis = Long.MAX_VALUE,
+                blunder = DEFAULT_BLUNDER;
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+            }
+            if (options.contains("--time")) {
+                millis = Long.parseLong(options.getFirst("--time"));
+                nodes = Long.MAX_VALUE;
+            }
+            if (options.contains("--nodes")) {
+                nodes = Long.parseLong(options.getFirst("--nodes"));
+            }
+            if (options.contains("--blunder")) {
+                blunder = Long.parseLong(options.getFirst("--blunder"));
+            }
+            if (threads <= 0 || nodes <= 0 || millis <= 0) {
+                throw new NumberFormatException("values must be positive");
+            }
+            Analyzer analyzer =
+                new Analyzer((AI) Main.autoPlayer(options), nodes, millis,
+                             blunder);
+            try (GameRecordReader in =
+                 new GameRecordReader(options.get("--").get(0));
+                 PrintWriter out = new PrintWriter(new BufferedWriter(
+                     new FileWriter(options.get("--").get(1))))) {
+                System.out.printf("%d games analyzed%n",
+                                  analyzer.run(in, out, threads));
+            }
+        } catch (IOException | IllegalArgumentException
+                 | IllegalStateException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * An analyzer using AIs created from TEMPLATE, each search stopping
+     * after MAXNODES positions or MILLIS milliseconds, and marking moves
+     * that lose at least BLUNDER as blunders.
+     */
+    Analyzer(AI template, long maxNodes, long millis, long blunder) {
+        _template = template;
+        _maxNodes = maxNodes;
+        _millis = millis;
+        _blunder = blunder;
+    }
+
+    /**
+     * Analyze the remaining games of IN on THREADS threads, writing the
+     * annotations of each to OUT in order.  Return the number of games
+     * analyzed.
+     */
+    int run(GameRecordReader in, PrintWriter out, int threads)
+        throws IOException {
+        ThreadLocal<AI> ais = ThreadLocal.withInitial(
+            () -> (AI) _template.create(null, null));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        int games = 0;
+        try {
+            while (in.hasNext()) {
+                GameRecord record = new GameRecord();
+                final int index = games;
+                final long offset = in.position();
+                in.next(record);
+                games += 1;
+                if (pending.size() >= GAMES_PER_THREAD * threads) {
+                    out.print(Tournament.await(pending.poll()));
+                }
+                pending.add(pool.submit(
+                    () -> annotate(ais.get(), index, offset, record)));
+            }
+            while (!pending.isEmpty()) {
+                out.print(Tournament.await(pending.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return games;
+    }
+
+    /**
+     * Return the annotations of RECORD, game #INDEX found at OFFSET in
+     * its file, using AI to search its positions.  The first line
+     * describes the game, and each further line a move: its number,
+     * the move, the best move found, the value of the position before
+     * the move, and the value lost by the move (from the mover's point
+     * of view), followed by "blunder" if the loss is at least my
+     * threshold.  A move that cannot be made ends the annotations with
+     * "illegal", or "game already over" if the game had been won.  The
+     * transposition table of AI is cleared first, so that with a budget
+     * of nodes the annotations do not depend on what AI searched before
+     * (and so on the number of threads).
+     */
+    String annotate(AI ai, int index, long offset, GameRecord record) {
+        ai.clearTable();
+        int n = record.size();
+        long[] values = new long[n + 1];
+        Move[] best = new Move[n + 1];
+        Piece[] movers = new Piece[n + 1];
+        Board board = new Board();
+        board.init();
+        int ply;
+        for (ply = 0; ply <= n; ply += 1) {
+            Piece winner = board.winner();
+            movers[ply] = board.turn();
+            if (winner != null) {
+                values[ply] = AI.winningValue(winner);
+            } else {
+                best[ply] = ai.bestMove(board, _maxNodes, _millis);
+                values[ply] = ai.stats().score;
+            }
+            Move move = ply < n ? record.move(ply) : null;
+            if (move == null || winner != null || !board.isLegal(move)) {
+                break;
+            }
+            board.makeMove(move);
+        }
+        StringBuilder result = new StringBuilder();
+        Piece winner = record.winner();
+        result.append(String.format("game %d at %d: %d moves, %s%n",
+                                    index, offset, n,
+                                    winner == null ? "unfinished"
+                                    : winner.toName() + " wins"));
+        for (int k = 0; k < Math.min(ply, n); k += 1) {
+            long loss = values[k] - values[k + 1];
+            if (movers[k] == BLACK) {
+                loss = -loss;
+            }
+            Move move = record.move(k);
+            if (move.equals(best[k])) {
+                loss = Math.min(loss, 0);
+            }
+            result.append(String.format("%d %s best %s score %d loss %d%s%n",
+                                        k + 1, move, best[k], values[k],
+                                        loss, loss >= _blunder
+                                        ? " blunder" : ""));
+        }
+        if (ply < n) {
+            result.append(String.format("%d %s %s%n", ply + 1,
+                                        record.move(ply),
+                                        board.winner() != null
+                                        ? "game already over" : "illegal"));
+        }
+        return result.toString();
+    }
+
+    /**
+     * The template for the AIs used.
+     */
+    private final AI _template;
+
+    /**
+     * The budget of each search, in positions and milliseconds.
+     */
+    private final long _maxNodes, _millis;
+
+    /**
+     * The loss marking a blunder.
+     */
+    private final long _blunder;
+
+}
@@ -0,0 +1,70 @@
+package tablut;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A task run on an executor that its submitter can later finish: if the
+ * task has not yet started, it is kept from ever starting; otherwise it
+ * is waited for.  A search that waits for such tasks while running on
+ * the same fixed pool cannot then wait on itself when the pool is busy.
+ * (Future.cancel cannot serve, since it also succeeds on a task that is
+ * running, without waiting for it to end.)
+ *
+ * @author chenyuanshan
+ */
+class BackgroundTask {
+
+    /**
+     * Submit BODY to POOL.
+     */
+    BackgroundTask(ExecutorService pool, Runnable body) {
+        _body = body;
+        _future = pool.submit(this::run);
+    }
+
+    /**
+     * Keep my body from starting if it has not, and otherwise wait for
+     * it to finish.
+     */
+    void finish() {
+        if (_claimed.compareAndSet(false, true)) {
+            _future.cancel(false);
+            return;
+        }
+        try {
+            _future.get();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause().toString());
+        }
+    }
+
+    /**
+     * Run my body, unless finish has already been called.
+     */
+    private void run() {
+        if (_claimed.compareAndSet(false, true)) {
+            _body.run();
+        }
+    }
+
+    /**
+     * The work to be done.
+     */
+    private final Runnable _body;
+
+    /**
+     * My body as submitted to the pool.
+     */
+    private final Future<?> _future;
+
+    /**
+     * Set by whichever of run and finish comes first.
+     */
+    private final AtomicBoolean _claimed = new AtomicBoolean();
+
+}
@@ -0,0 +1,103 @@
+package tablut;
+
+import java.io.PrintStream;
+
+import static tablut.Utils.*;
+
+/**
+ * A fixed benchmark of the search.  Each of a built-in set of positions
+ * is searched to a fixed depth by an AI starting with an empty
+ * transposition table.  The total number of positions visited then
+ * depends only on the behavior of Board and AI, and so serves as a
+ * signature: a change meant to make them faster without changing what
+ * they compute must leave it alone.  The rate at which positions are
+ * visited measures the speed of the engine.
+ *
+ * @author chenyuanshan
+ */
+class Bench {
+
+    /**
+     * The default depth of search, at which the benchmark takes a few
+     * seconds.
+     */
+    static final int DEFAULT_DEPTH = 3;
+
+    /**
+     * The positions searched, each given by the moves reaching it from
+     * the initial position.  They are taken from games played at random
+     * so as to cover the opening and middle game.
+     */
+    static final String[] POSITIONS = {
+        "",
+        "a4-b d5-3 a6-b e5-d",
+        "d1-a e6-b f9-h b6-g i4-3 e7-i a4-2 c5-1",
+        "d1-c g5-2 c1-b d5-4 h5-3 c5-8 a6-b c8-3 b6-7 f5-4 b1-2 e5-g",
+        "i6-7 g5-3 e2-b e3-d f1-2 e7-h i4-1 g3-6 i1-h d5-4 b5-3 e6-b"
+        + " b3-a d4-7 e8-b d3-h",
+        "e8-f e4-b i4-g c5-6 f8-c e7-b h5-9 b7-a h9-8 b4-e b5-9 d5-4"
+        + " d1-2 c6-2 f1-3 c2-7 f3-1 d4-c i6-8 c4-d",
+        "b5-2 g5-3 f1-h e7-b e8-c b7-h f9-8 e4-d i6-7 c5-7 d1-3 e3-4"
+        + " a6-b g3-2 b2-3 c7-e b6-8 h7-8 b3-5 e4-f f8-9 g2-h d3-f h8-i"
+        + " b8-a d5-8",
+        "e8-f e3-c d1-4 c3-b f8-h b3-e e1-d g5-4 a6-7 e6-c b5-8 c6-a"
+        + " b8-1 g4-8 a7-9 e4-h h8-i d5-8 d1-3 e7-i e2-f g8-4 b1-6 e5-7"
+        + " f2-a g4-8 a4-c e7-8 f1-4 e3-h h5-6 f5-7",
+    };
+
+    /**
+     * Return a new Board set to benchmark position K.
+     */
+    static Board position(int k) {
+        Board board = new Board();
+        board.init();
+        for (String move : POSITIONS[k].split(" ")) {
+            if (!move.isEmpty()) {
+                Move m = Move.mv(move);
+                if (m == null || !board.isLegal(m)) {
+                    throw error("illegal move in benchmark position %d: %s",
+                                k, move);
+                }
+                board.makeMove(m);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Search every benchmark position to DEPTH with AI, printing the
+     * result for each position and the totals on OUT.  Return the total
+     * number of positions visited.
+     */
+    static long run(AI ai, int depth, PrintStream out) {
+        if (depth <= 0) {
+            throw error("depth must be positive");
+        }
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (int k = 0; k < POSITIONS.length; k += 1) {
+            Move best = ai.bestMove(position(k), depth);
+            SearchStats stats = ai.stats();
+            out.printf("position %d: best %s score %d nodes %d%n",
+                       k + 1, best, stats.score, stats.nodes);
+            nodes += stats.nodes;
+        }
+        long millis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        out.printf("depth %d: %d positions, %d nodes%n",
+                   depth, POSITIONS.length, nodes);
+        out.printf("%d ms, %d nodes/second%n", millis,
+                   millis == 0 ? 0 : nodes * MILLIS_PER_SECOND / millis);
+        return nodes;
+    }
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * Milliseconds per second.
+     */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+}
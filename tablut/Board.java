@@ -7,10 +7,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Formatter;
+import java.util.Random;
 
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Move.mv;
+import static tablut.Utils.error;
 
 
 /**
@@ -59,6 +61,28 @@ class Board {
         NTHRONE, ETHRONE, STHRONE, WTHRONE
     };
 
+    /**
+     * Random keys used by hashKey: PIECE_KEYS[s][p] is the key for Piece
+     * with ordinal p on the Square with index s.
+     */
+    private static final long[][] PIECE_KEYS =
+        new long[NUM_SQUARES][Piece.values().length];
+
+    /**
+     * The key added by hashKey when it is white's move.
+     */
+    private static final long WHITE_TO_MOVE_KEY;
+
+    static {
+        Random keys = new Random(SIZE);
+        for (long[] row : PIECE_KEYS) {
+            for (int p = 0; p < row.length; p += 1) {
+                row[p] = keys.nextLong();
+            }
+        }
+        WHITE_TO_MOVE_KEY = keys.nextLong();
+    }
+
     /**
      * Initializes a game board with SIZE squares on a side in the
      * initial position.
@@ -75,24 +99,30 @@ class Board {
     }
 
     /**
-     * Copies MODEL into me.
+     * Copies MODEL into me.  The copy shares no mutable state with MODEL,
+     * so that either may afterwards be changed without affecting the other.
      */
     void copy(Board model) {
         if (model == this) {
             return;
         }
         init();
-        _board = model._board;
+        _board = deepcopy(model._board);
         _moveCount = model._moveCount;
         _repeated = model._repeated;
         _turn = model._turn;
         _winner = model._winner;
-        _boardset = model._boardset;
-        _storage = model._storage;
+        _moveLimit = model._moveLimit;
+        _boardset = new HashSet<String>(model._boardset);
+        _storage = new Stack<HashMap<Square, Piece>>();
+        _storage.addAll(model._storage);
+        if (_accumulator != null) {
+            _accumulator.refresh(this);
+        }
     }
 
     /**
-     * Clears the board to the initial position.
+     * Clears the board to the initial position, with no move limit.
      */
     void init() {
         for (int i = 0; i < SIZE; i = i + 1) {
@@ -108,12 +138,49 @@ class Board {
         }
         _board.replace(THRONE, KING);
         _turn = BLACK;
+        _moveLimit = 0;
         _moveCount = 0;
         _winner = null;
         _repeated = false;
         clearUndo();
         _boardset.add(encodedBoard());
         _storage.push(deepcopy(_board));
+        if (_accumulator != null) {
+            _accumulator.refresh(this);
+        }
+    }
+
+    /**
+     * Set me to the position described by ENCODING, in the format
+     * produced by encodedBoard, with no winner and no undo information.
+     */
+    void setPosition(String encoding) {
+        if (encoding.length() != NUM_SQUARES + 1) {
+            throw error("bad board encoding");
+        }
+        init();
+        _turn = pieceFor(encoding.charAt(0));
+        if (_turn != WHITE && _turn != BLACK) {
+            throw error("bad side to move in board encoding");
+        }
+        for (Square sq : SQUARE_LIST) {
+            put(pieceFor(encoding.charAt(sq.index() + 1)), sq);
+        }
+        clearUndo();
+        _boardset.add(encodedBoard());
+        _storage.push(deepcopy(_board));
+    }
+
+    /**
+     * Return the Piece whose printed form is C.
+     */
+    private static Piece pieceFor(char c) {
+        for (Piece p : Piece.values()) {
+            if (p.toString().charAt(0) == c) {
+                return p;
+            }
+        }
+        throw error("bad piece in board encoding: %c", c);
     }
 
     /**
@@ -123,6 +190,16 @@ class Board {
         if (moveCount() >= 2 * n) {
             throw new IllegalArgumentException();
         }
+        _moveLimit = n;
+    }
+
+    /**
+     * Return the move limit set by setMoveLimit, or 0 if there is none.
+     * A side that has made this many moves loses when it is next to
+     * move.
+     */
+    int moveLimit() {
+        return _moveLimit;
     }
 
     /**
@@ -215,6 +292,14 @@ class Board {
      */
     final void put(Piece p, Square s) {
         if (_board.containsKey(s)) {
+            if (_accumulator != null) {
+                if (_board.get(s) != EMPTY) {
+                    _accumulator.remove(_board.get(s), s);
+                }
+                if (p != EMPTY) {
+                    _accumulator.add(p, s);
+                }
+            }
             _board.replace(s, p);
         }
     }
@@ -308,7 +393,13 @@ class Board {
      * Move FROM-TO, assuming this is a legal move.
      */
     void makeMove(Square from, Square to) {
-        Piece temp = _board.get(from); _board.replace(to, temp);
+        Piece temp = _board.get(from);
+        if (_accumulator != null) {
+            _accumulator.push();
+            _accumulator.remove(temp, from);
+            _accumulator.add(temp, to);
+        }
+        _board.replace(to, temp);
         _board.replace(from, EMPTY); _moveCount = _moveCount + 1;
         if (this.turn() == BLACK) {
             _turn = WHITE;
@@ -333,6 +424,10 @@ class Board {
                 _winner = BLACK;
             }
         }
+        if (_winner == null && _moveLimit > 0
+            && _moveCount / 2 >= _moveLimit) {
+            _winner = _turn.opponent();
+        }
     }
     /**
      * A new method to do capture with TO and TEMP.
@@ -406,6 +501,9 @@ class Board {
      */
     private void capture(Square sq0, Square sq2) {
         Square bt = sq0.between(sq2);
+        if (_accumulator != null) {
+            _accumulator.remove(_board.get(bt), bt);
+        }
         _board.replace(bt, EMPTY);
 
     }
@@ -430,6 +528,9 @@ class Board {
             if (_storage.size() >= 2) {
                 _storage.pop();
                 _board = deepcopy(_storage.peek());
+                if (_accumulator != null) {
+                    _accumulator.pop();
+                }
             }
             if (turn() == BLACK) {
                 _turn = WHITE;
@@ -451,6 +552,9 @@ class Board {
         _boardset.clear();
         _storage.clear();
         _moveCount = 0;
+        if (_accumulator != null) {
+            _accumulator.clearHistory();
+        }
     }
 
     /**
@@ -550,6 +654,39 @@ class Board {
         return new String(result);
     }
 
+    /**
+     * Return a 64-bit hash of the current position and side to move,
+     * suitable as a key for a TranspositionTable.
+     */
+    long hashKey() {
+        long key = _turn == WHITE ? WHITE_TO_MOVE_KEY : 0;
+        for (Square sq : SQUARE_LIST) {
+            Piece p = _board.get(sq);
+            if (p != EMPTY) {
+                key ^= PIECE_KEYS[sq.index()][p.ordinal()];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Keep ACC up to date with my position from now on, first
+     * recomputing it, or stop updating any accumulator if ACC is null.
+     */
+    void setAccumulator(NNUE.Accumulator acc) {
+        _accumulator = acc;
+        if (acc != null) {
+            acc.refresh(this);
+        }
+    }
+
+    /**
+     * Return the accumulator I keep up to date, or null if none.
+     */
+    NNUE.Accumulator accumulator() {
+        return _accumulator;
+    }
+
     /**
      * Return the hashmap _board of me.
      */
@@ -596,6 +733,11 @@ class Board {
      * Number of (still undone) moves since initial position.
      */
     private int _moveCount;
+    /**
+     * The limit on the number of moves by each side, or 0 for none.
+     */
+    private int _moveLimit;
+
     /**
      * True when current board is a repeated position (ending the game).
      */
@@ -607,6 +749,11 @@ class Board {
     private HashMap<Square, Piece> _board = new HashMap<>();
 
 
+    /**
+     * Evaluator state updated as pieces move, or null.
+     */
+    private NNUE.Accumulator _accumulator;
+
     /**
      * Create a Hashset to record the board after each movement.
      */
@@ -3,17 +3,24 @@ package tablut;
 import ucb.gui2.Pad;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Font;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import javax.swing.Timer;
 
 import static tablut.Piece.*;
 import static tablut.Square.sq;
 
 /**
- * A widget that displays a Tablut game.
+ * A widget that displays a Tablut game.  It draws from an immutable
+ * snapshot of the position, replaced on each update, so that drawing
+ * never touches (or locks) the live Board, and repaints at most once per
+ * FRAME_MILLIS however often it is updated.  The grid, which never
+ * changes, is drawn once into an image.
  *
  * @author chenyuanshan
  */
@@ -68,6 +75,52 @@ class BoardWidget extends Pad {
         Board.NTHRONE, Board.ETHRONE, Board.STHRONE, Board.WTHRONE
     };
 
+    /**
+     * Minimum time between repaints, in milliseconds (about the refresh
+     * period of a display).
+     */
+    static final int FRAME_MILLIS = 16;
+
+    /**
+     * The contents of the squares of a board and the side to move, as
+     * of some moment.
+     */
+    static final class Snapshot {
+        /**
+         * A snapshot of BOARD.
+         */
+        Snapshot(Board board) {
+            for (Square s : Square.SQUARE_LIST) {
+                _pieces[s.index()] = board.get(s);
+            }
+            _turn = board.turn();
+        }
+
+        /**
+         * Return the contents of S.
+         */
+        Piece get(Square s) {
+            return _pieces[s.index()];
+        }
+
+        /**
+         * Return the side to move.
+         */
+        Piece turn() {
+            return _turn;
+        }
+
+        /**
+         * The contents of the squares, indexed by Square.index.
+         */
+        private final Piece[] _pieces = new Piece[SIZE * SIZE];
+
+        /**
+         * The side to move.
+         */
+        private final Piece _turn;
+    }
+
     /**
      * A graphical representation of a Tablut board that sends commands
      * derived from mouse clicks to COMMANDS.
@@ -77,6 +130,14 @@ class BoardWidget extends Pad {
         setMouseHandler("click", this::mouseClicked);
         setPreferredSize(BOARD_SIDE, BOARD_SIDE);
         _acceptingMoves = false;
+        Board initial = new Board();
+        initial.init();
+        _snapshot = new Snapshot(initial);
+        _refresh = new Timer(FRAME_MILLIS, e -> {
+            _repaintPending.set(false);
+            repaint();
+        });
+        _refresh.setRepeats(false);
     }
 
     /**
@@ -112,16 +173,49 @@ class BoardWidget extends Pad {
     }
 
     @Override
-    public synchronized void paintComponent(Graphics2D g) {
-        drawGrid(g);
-        Square.SQUARE_LIST.iterator().forEachRemaining(s -> drawPiece(g, s));
+    public void paintComponent(Graphics2D g) {
+        render(g);
+    }
+
+    /**
+     * Draw the board as of the last update on G.
+     */
+    void render(Graphics2D g) {
+        if (_background == null) {
+            BufferedImage background =
+                new BufferedImage(BOARD_SIDE, BOARD_SIDE,
+                                  BufferedImage.TYPE_INT_RGB);
+            Graphics2D bg = background.createGraphics();
+            drawGrid(bg);
+            bg.dispose();
+            _background = background;
+        }
+        g.drawImage(_background, 0, 0, null);
+        Snapshot position = _snapshot;
+        for (Square s : Square.SQUARE_LIST) {
+            drawPiece(g, s, position.get(s));
+        }
     }
 
     /**
-     * Draw the contents of S on G.
+     * Return an image of the board as of the last update, as it would
+     * be displayed.
      */
-    private void drawPiece(Graphics2D g, Square s) {
-        if (_board.get(s) == KING) {
+    BufferedImage renderImage() {
+        BufferedImage image =
+            new BufferedImage(BOARD_SIDE, BOARD_SIDE,
+                              BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        render(g);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draw PIECE, the contents of S, on G.
+     */
+    private void drawPiece(Graphics2D g, Square s, Piece piece) {
+        if (piece == KING) {
             g.setColor(Color.red);
             g.drawOval(cx(s) + OFFSET, cy(s) + OFFSET,
                     SQUARE_SIDE - 2 * OFFSET, SQUARE_SIDE - 2 * OFFSET);
@@ -132,7 +226,7 @@ class BoardWidget extends Pad {
             g.setFont(KING_FONT);
             g.drawString("K", cx(s) + 4 * OFFSET, cy(s) + 10 * OFFSET);
         }
-        if (_board.get(s) == WHITE) {
+        if (piece == WHITE) {
             g.setColor(Color.red);
             g.drawOval(cx(s) + OFFSET, cy(s) + OFFSET,
                     SQUARE_SIDE - 2 * OFFSET, SQUARE_SIDE - 2 * OFFSET);
@@ -140,7 +234,7 @@ class BoardWidget extends Pad {
             g.fillOval(cx(s) + OFFSET, cy(s) + OFFSET,
                     SQUARE_SIDE - 2 * OFFSET, SQUARE_SIDE - 2 * OFFSET);
         }
-        if (_board.get(s) == BLACK) {
+        if (piece == BLACK) {
             g.setColor(Color.red);
             g.drawOval(cx(s) + OFFSET, cy(s) + OFFSET,
                     SQUARE_SIDE - 2 * OFFSET, SQUARE_SIDE - 2 * OFFSET);
@@ -154,14 +248,18 @@ class BoardWidget extends Pad {
      * Handle a click on S.
      */
     private void click(Square s) {
+        Snapshot position = _snapshot;
         if (!_hasclick) {
-            if (_board.turn() == _board.get(s).side()) {
+            if (position.turn() == position.get(s).side()) {
                 _hasclick = true;
                 _clicked = s;
             }
         } else {
-            if (_board.get(s) == EMPTY) {
-                _board.makeMove(_clicked, s);
+            if (position.get(s) == EMPTY) {
+                Move move = Move.mv(_clicked, s);
+                if (move != null) {
+                    _commands.offer(move.toString());
+                }
                 _clicked = null;
                 _hasclick = false;
             } else {
@@ -175,7 +273,7 @@ class BoardWidget extends Pad {
     /**
      * Handle mouse click event E.
      */
-    private synchronized void mouseClicked(String unused, MouseEvent e) {
+    private void mouseClicked(String unused, MouseEvent e) {
         int xpos = e.getX(), ypos = e.getY();
         int x = (xpos - OFFSET - MARGIN) / SQUARE_SIDE,
                 y = (OFFSET - ypos) / SQUARE_SIDE + SIZE - 1;
@@ -186,11 +284,15 @@ class BoardWidget extends Pad {
     }
 
     /**
-     * Revise the displayed board according to BOARD.
+     * Revise the displayed board according to BOARD.  The repaint is
+     * deferred so that updates arriving within FRAME_MILLIS of each
+     * other are drawn once, from the last of them.
      */
-    synchronized void update(Board board) {
-        _board.copy(board);
-        repaint();
+    void update(Board board) {
+        _snapshot = new Snapshot(board);
+        if (_repaintPending.compareAndSet(false, true)) {
+            _refresh.restart();
+        }
     }
 
     /**
@@ -240,14 +342,29 @@ class BoardWidget extends Pad {
      */
     private ArrayBlockingQueue<String> _commands;
     /**
-     * Board being displayed.
+     * The position being displayed.
+     */
+    private volatile Snapshot _snapshot;
+
+    /**
+     * Image of the empty board, or null until first needed.
+     */
+    private BufferedImage _background;
+
+    /**
+     * True iff a repaint has been scheduled by update but not done.
+     */
+    private final AtomicBoolean _repaintPending = new AtomicBoolean();
+
+    /**
+     * Timer that repaints after an update.
      */
-    private final Board _board = new Board();
+    private final Timer _refresh;
 
     /**
      * True iff accepting moves from user.
      */
-    private boolean _acceptingMoves;
+    private volatile boolean _acceptingMoves;
 
     /**
      * True is there is a square has been clicked.
@@ -0,0 +1,95 @@
+package tablut;
+
+/**
+ * A game clock for one side: the time that side has left, which runs
+ * down while it is that side's turn, plus a fixed increment added after
+ * each of its moves.  Times are in milliseconds.
+ *
+ * @author chenyuanshan
+ */
+class Clock {
+
+    /**
+     * A stopped clock with REMAINING milliseconds left, adding INCREMENT
+     * milliseconds after each move.
+     */
+    Clock(long remaining, long increment) {
+        _remaining = _initial = remaining;
+        _increment = increment;
+    }
+
+    /**
+     * Stop the clock and set the time left back to what it was when I
+     * was created, as for a new game.
+     */
+    void reset() {
+        _remaining = _initial;
+        _started = 0;
+    }
+
+    /**
+     * Start the clock running, if it is not already.
+     */
+    void start() {
+        if (!running()) {
+            _started = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Stop the clock at the end of a move, deducting the time used since
+     * start and adding the increment.  Has no effect if the clock is not
+     * running.
+     */
+    void stop() {
+        if (running()) {
+            _remaining = remaining() + _increment;
+            _started = 0;
+        }
+    }
+
+    /**
+     * Return true iff the clock is running.
+     */
+    boolean running() {
+        return _started != 0;
+    }
+
+    /**
+     * Return the time left, in milliseconds, as of now.
+     */
+    long remaining() {
+        if (running()) {
+            return _remaining - (System.currentTimeMillis() - _started);
+        }
+        return _remaining;
+    }
+
+    /**
+     * Return the time added after each move, in milliseconds.
+     */
+    long increment() {
+        return _increment;
+    }
+
+    /**
+     * The time left when the clock was last stopped.
+     */
+    private long _remaining;
+
+    /**
+     * The time left when the clock was created.
+     */
+    private final long _initial;
+
+    /**
+     * The time added after each move.
+     */
+    private final long _increment;
+
+    /**
+     * The time at which the clock was started, or 0 if it is stopped.
+     */
+    private long _started;
+
+}
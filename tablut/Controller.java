@@ -1,11 +1,20 @@
 package tablut;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.List;
 import java.util.Random;
-import java.util.Scanner;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.function.Consumer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import static tablut.Utils.*;
 import static tablut.Square.*;
@@ -27,15 +36,28 @@ final class Controller {
      * to report moves, wins, and errors to user. If LOGFILE is
      * non-null, copies all commands to it. If STRICT, exits the
      * program with non-zero code on receiving an erroneous move from a
-     * player.
+     * player.  Reads commands from the standard input and prints
+     * command output on the standard output.
      */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, strict, System.in, System.out);
+    }
+
+    /**
+     * As for the constructor above, but reading commands from INPUT and
+     * printing command output on OUTPUT.
+     */
+    Controller(View view, PrintStream logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               boolean strict, InputStream input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = new BufferedReader(new InputStreamReader(input));
+        _out = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -52,15 +74,15 @@ final class Controller {
         _playing = true;
         _winner = null;
         _board.init();
+        startGame();
         while (_playing) {
             _view.update(this);
             String command;
-            if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
-                } else {
-                    command = _black.myMove();
-                }
+            if (_deferredCommand != null) {
+                command = _deferredCommand;
+                _deferredCommand = null;
+            } else if (_winner == null) {
+                command = move(_board.turn() == WHITE ? _white : _black);
             } else {
                 command = _nonPlayer.myMove();
                 if (command == null) {
@@ -72,13 +94,145 @@ final class Controller {
             } catch (IllegalArgumentException excp) {
                 reportError("Error: %s%n", excp.getMessage());
                 if (_strict) {
+                    _out.flush();
                     System.exit(1);
                 }
             }
         }
+        if (_winner == null) {
+            endGame();
+        }
+        _out.flush();
         if (_logFile != null) {
             _logFile.close();
         }
+        if (_recorder != null) {
+            writeRecord();
+            try {
+                _recorder.close();
+            } catch (IOException excp) {
+                reportError("Could not write game record: %s%n",
+                            excp.getMessage());
+            }
+            _recorder = null;
+        }
+    }
+
+    /**
+     * Return the next command from PLAYER.  The moves of automated
+     * players are computed on my search pool, if I have one.  If I am
+     * interruptible or report the progress of searches, they are
+     * computed on another thread in any case, and meanwhile the
+     * progress is reported and, if I am interruptible, commands entered
+     * are polled for: "stop" makes the player move at once, and any
+     * other command abandons the search (if it is not already over) and
+     * is returned instead.
+     */
+    private String move(Player player) {
+        if (player.isManual()
+            || (_searchPool == null && !_interruptible
+                && _searchInfo == null)) {
+            return player.myMove();
+        }
+        ExecutorService pool = _searchPool;
+        if (pool == null) {
+            if (_searcher == null) {
+                _searcher = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "search");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            pool = _searcher;
+        }
+        Future<String> search = pool.submit(player::myMove);
+        String command = null;
+        boolean stop = false;
+        long nextInfo = System.currentTimeMillis() + INFO_MILLIS;
+        while (true) {
+            try {
+                String move = search.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (command == null || stop) {
+                    return move;
+                } else if (move == null) {
+                    return command;
+                }
+                _deferredCommand = command;
+                return move;
+            } catch (TimeoutException excp) {
+                if (System.currentTimeMillis() >= nextInfo) {
+                    reportSearchInfo();
+                    nextInfo += INFO_MILLIS;
+                }
+                if (_interruptible && command == null) {
+                    command = _nonPlayer.pollCommand();
+                    if (command != null) {
+                        _tokenizer.reset(command);
+                        if (_tokenizer.isEmpty()) {
+                            command = null;
+                        }
+                        stop = _tokenizer.nextWord("stop")
+                            && !_tokenizer.hasNext();
+                    }
+                }
+                if (command != null) {
+                    player.stopMove(stop);
+                }
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException("interrupted");
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause().toString());
+            }
+        }
+    }
+
+    /**
+     * Compute the moves of automated players on another thread, polling
+     * for commands meanwhile, iff INTERRUPTIBLE.  The commands come from
+     * the pollCommand method of the manual player template, and allow a
+     * long search to be stopped or abandoned.
+     */
+    void setInterruptible(boolean interruptible) {
+        _interruptible = interruptible;
+    }
+
+    /**
+     * Compute the moves of automated players on POOL (if not null),
+     * rather than on the thread calling play, so that the number of
+     * searches running at once is bounded by the size of POOL.
+     */
+    void setSearchPool(ExecutorService pool) {
+        _searchPool = pool;
+    }
+
+    /**
+     * Return the pool set by setSearchPool, or null if there is none.
+     */
+    ExecutorService searchPool() {
+        return _searchPool;
+    }
+
+    /**
+     * Play one game without reading input.  First execute the commands
+     * in SETUP (for example, "limit" and "time" commands and opening
+     * moves).  Then let automated players created from WHITETEMPLATE
+     * and BLACKTEMPLATE move until there is a winner, appending each of
+     * their moves to MOVES, and return the winner.
+     */
+    Piece playGame(List<String> setup, Player whiteTemplate,
+                   Player blackTemplate, List<String> moves) {
+        for (String cmnd : setup) {
+            executeCommand(cmnd);
+        }
+        _white = whiteTemplate.create(WHITE, this);
+        _black = blackTemplate.create(BLACK, this);
+        while (_winner == null) {
+            Player player = _board.turn() == WHITE ? _white : _black;
+            String move = player.myMove();
+            executeCommand(move);
+            moves.add(move);
+        }
+        return _winner;
     }
 
     /**
@@ -115,16 +269,114 @@ final class Controller {
      */
     String readLine(boolean prompt) {
         if (prompt) {
-            System.out.print("> ");
-            System.out.flush();
+            _out.print("> ");
+            if (_autoFlush) {
+                _out.flush();
+            }
         }
-        if (_input.hasNextLine()) {
-            return _input.nextLine().trim();
-        } else {
+        try {
+            String line = _input.readLine();
+            return line == null ? null : line.trim();
+        } catch (IOException excp) {
             return null;
         }
     }
 
+    /**
+     * Return the next line of input if one is available without
+     * waiting, and otherwise null.
+     */
+    String pollLine() {
+        try {
+            return _input.ready() ? readLine(false) : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Flush my output after each prompt and the log after each entry
+     * iff AUTOFLUSH (initially true).  Otherwise output is flushed only
+     * when its buffer fills and when play ends, which suits batch runs
+     * of long scripts.
+     */
+    void setAutoFlush(boolean autoFlush) {
+        _autoFlush = autoFlush;
+    }
+
+    /**
+     * Append a record of each game played to RECORDER, with the score
+     * and time of the search behind each automated player's move.  A
+     * game is written when the next one starts or play ends, and
+     * RECORDER is closed at the end of play.  Games set up with
+     * "toggle", or that have illegal moves, cannot be replayed from
+     * the initial position, and are not written.
+     */
+    void setRecorder(GameRecordWriter recorder) {
+        _recorder = recorder;
+    }
+
+    /**
+     * Answer "lookup" commands from DATABASE.
+     */
+    void setDatabase(GameDatabase database) {
+        _database = database;
+    }
+
+    /**
+     * Report the progress of automated players' searches to my reporter
+     * about every INFO_MILLIS milliseconds iff ON.  Searches post their
+     * progress to a mailbox, which this thread empties while it waits
+     * for their moves (see move), so that reporting never holds up a
+     * search, and reports are ordered with the rest of my output.
+     */
+    void setSearchInfo(boolean on) {
+        if (!on) {
+            _searchInfo = null;
+        } else if (_searchInfo == null) {
+            _searchInfo = new Mailbox<>();
+        }
+    }
+
+    /**
+     * Return the mailbox to which automated players should post the
+     * progress of their searches, or null if it is not reported.
+     */
+    Mailbox<SearchInfo> searchInfo() {
+        return _searchInfo;
+    }
+
+    /**
+     * Report the latest progress posted by a search, if any.  This
+     * holds the lock of my output, as does reportMove, which a search
+     * calls from its own thread.
+     */
+    private void reportSearchInfo() {
+        synchronized (_out) {
+            Mailbox<SearchInfo> mailbox = _searchInfo;
+            SearchInfo info = mailbox == null ? null : mailbox.take();
+            if (info != null) {
+                _reporter.reportSearchInfo(info);
+            }
+        }
+    }
+
+    /**
+     * Return true iff automated players should continue searching
+     * while their opponents consider their moves.
+     */
+    boolean pondering() {
+        return _pondering;
+    }
+
+    /**
+     * Return the clock of SIDE, or null if SIDE is not playing with a
+     * clock.
+     */
+    Clock clock(Piece side) {
+        return side == WHITE ? _whiteClock : _blackClock;
+    }
+
     /**
      * Return true iff white is a manual player.
      */
@@ -154,10 +406,33 @@ final class Controller {
     }
 
     /**
-     * Report move by calling reportMove(MOVE) on my reporter.
+     * Report move by calling reportMove(MOVE) on my reporter, first
+     * reporting the final progress of the search that found it.
      */
     void reportMove(Move move) {
-        _reporter.reportMove(move);
+        synchronized (_out) {
+            reportSearchInfo();
+            _reporter.reportMove(move);
+        }
+    }
+
+    /**
+     * Record STATS as the statistics of the last search by an automated
+     * player, and report them as a note if logging statistics.
+     */
+    void reportStats(SearchStats stats) {
+        _lastStats = _moveStats = stats;
+        if (_logStats) {
+            _reporter.reportNote("%s", stats);
+        }
+    }
+
+    /**
+     * Report the statistics of each automated player's search after
+     * its move iff LOGSTATS.
+     */
+    void setLogStats(boolean logStats) {
+        _logStats = logStats;
     }
 
     /**
@@ -167,133 +442,270 @@ final class Controller {
     void logComment(String format, Object... args) {
         if (_logFile != null) {
             _logFile.printf("# " + format + "%n", args);
-            _logFile.flush();
+            if (_autoFlush) {
+                _logFile.flush();
+            }
         }
     }
 
     /**
-     * A Command is pair (<pattern>, <processor>), where <pattern> is a
-     * Matcher that matches instances of a particular command, and
-     * <processor> is a functional object whose .accept method takes a
-     * successfully matched Matcher and performs some operation.
+     * A Command is pair (<name>, <processor>), where <name> is the
+     * keyword that starts a particular command, and <processor> is a
+     * functional object whose .accept method takes a Controller and a
+     * Tokenizer positioned after the keyword, reads the rest of the
+     * command, and performs some operation.
      */
     private static class Command {
         /**
-         * A new Command that matches PATN (a regular expression) and uses
-         * PROCESSOR to process commands that match the pattern.
+         * A new Command named NAME (in lower case) that uses PROCESSOR
+         * to process commands that start with NAME.
+         */
+        Command(String name, BiConsumer<Controller, Tokenizer> processor) {
+            this(name, processor, false);
+        }
+
+        /**
+         * A new Command named NAME that uses PROCESSOR to process
+         * commands that start with NAME, and that searches (and so runs
+         * on the search pool, if any) iff SEARCH.
          */
-        Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
+        Command(String name, BiConsumer<Controller, Tokenizer> processor,
+                boolean search) {
+            _name = name;
             _processor = processor;
+            _search = search;
         }
 
         /**
-         * A Matcher matching my pattern.
+         * The keyword starting my command.
          */
-        protected final Matcher _matcher;
+        protected final String _name;
         /**
          * The function object that implements my command.
          */
-        protected final Consumer<Matcher> _processor;
+        protected final BiConsumer<Controller, Tokenizer> _processor;
+        /**
+         * True iff my command runs a search.
+         */
+        protected final boolean _search;
     }
 
     /**
      * A list of Commands describing the valid textual commands to the
-     * Tablut program and the methods to process them.
-     */
-    private Command[] _commands = {
-        new Command("quit$", this::doQuit),
-        new Command("new$", this::doNew),
-        new Command("seed\\s+(\\d+)$", this::doSeed),
-        new Command("dump$", this::doDump),
-        new Command("undo$", this::doUndo),
-        new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
-        new Command("limit\\s+(\\d+)$", this::doLimit),
-        new Command("toggle\\s+" + SQ + "$", this::doToggle),
-        new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
+     * Tablut program, other than moves, and the methods to process them.
+     */
+    private static final Command[] COMMANDS = {
+        new Command("quit", Controller::doQuit),
+        new Command("new", Controller::doNew),
+        new Command("seed", Controller::doSeed),
+        new Command("dump", Controller::doDump),
+        new Command("undo", Controller::doUndo),
+        new Command("manual", Controller::doManual),
+        new Command("auto", Controller::doAuto),
+        new Command("limit", Controller::doLimit),
+        new Command("ponder", Controller::doPonder),
+        new Command("stats", Controller::doStats),
+        new Command("solve", Controller::doSolve, true),
+        new Command("analyze", Controller::doAnalyze, true),
+        new Command("time", Controller::doTime),
+        new Command("toggle", Controller::doToggle),
+        new Command("lookup", Controller::doLookup),
+        new Command("stop", Controller::doStop),
+        new Command("bench", Controller::doBench, true),
+        new Command("perft", Controller::doPerft, true),
+        new Command("divide", Controller::doDivide, true),
+        new Command("metrics", Controller::doMetrics),
     };
 
     /**
-     * A Matcher whose Pattern matches comments.
+     * The default maximum depth of the "analyze" command.
      */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+    static final int ANALYSIS_DEPTH = 3;
+
+    /**
+     * The default number of positions visited by the "solve" command.
+     */
+    static final long SOLVE_NODES = 20000;
+
+    /**
+     * Multiplier giving a percentage.
+     */
+    private static final double PERCENT = 100.0;
+
+    /**
+     * Milliseconds between polls for commands during a search.
+     */
+    static final long POLL_MILLIS = 20;
+
+    /**
+     * Milliseconds between reports of the progress of searches.
+     */
+    static final long INFO_MILLIS = 100;
+
+    /**
+     * Milliseconds per second.
+     */
+    private static final double MILLIS_PER_SECOND = 1000.0;
 
     /**
      * Check that CMND is one of the valid Tablut commands and execute it, if
-     * so, raising an IllegalArgumentException otherwise.
+     * so, raising an IllegalArgumentException otherwise.  Case is ignored,
+     * as is anything following '#'.  In the log, the move of an automated
+     * player is followed by a comment giving the score and time of its
+     * search, as read by LogConverter.  Commands that search run on my
+     * search pool, if I have one, while this thread waits.
      */
     private void executeCommand(String cmnd) {
         if (_logFile != null) {
-            _logFile.println(cmnd);
-            _logFile.flush();
+            SearchStats stats = _moveStats;
+            _logFile.println(stats == null ? cmnd
+                             : cmnd + LogConverter.comment(moveScore(stats),
+                                                           stats.millis()));
+            if (_autoFlush) {
+                _logFile.flush();
+            }
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
-
-        if (cmnd.isEmpty()) {
+        Tokenizer args = _tokenizer;
+        args.reset(cmnd);
+        if (args.isEmpty()) {
             return;
         }
-        for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
+        if (args.atMove()) {
+            doMove(args);
+            return;
+        }
+        for (Command command : COMMANDS) {
+            if (args.nextWord(command._name)) {
+                if (command._search && _searchPool != null) {
+                    runOnSearchPool(() -> command._processor.accept(this,
+                                                                    args));
+                } else {
+                    command._processor.accept(this, args);
+                }
                 return;
             }
         }
-        throw error("Bad command: %s", cmnd);
+        throw args.badCommand();
+    }
+
+    /**
+     * Run TASK on my search pool and wait for it to finish, passing on
+     * any unchecked exception it throws.
+     */
+    private void runOnSearchPool(Runnable task) {
+        try {
+            _searchPool.submit(task).get();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause().toString());
+        }
     }
 
     /**
-     * Command "new".
+     * Read a color ("white" or "black") from ARGS, returning the
+     * corresponding Piece.
      */
-    private void doNew(Matcher unused) {
+    private static Piece nextColor(Tokenizer args) {
+        if (args.nextWord("white")) {
+            return WHITE;
+        } else if (args.nextWord("black")) {
+            return BLACK;
+        }
+        throw args.badCommand();
+    }
+
+    /**
+     * Command "new", whose (absent) arguments are in ARGS.  The new game
+     * starts with no move limit, and with any clocks set back to the
+     * times given by the "time" commands that created them.
+     */
+    private void doNew(Tokenizer args) {
+        args.end();
+        writeRecord();
+        if (_winner == null) {
+            endGame();
+        }
         _board.init();
         _winner = null;
+        resetClock(WHITE);
+        resetClock(BLACK);
+        startClock(_board.turn());
+        startGame();
     }
 
     /**
-     * Command "manual <color>", where <color> is COLOR.group(1).
+     * Note the start of a game for the flight recorder.
      */
-    private void doManual(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
+    private void startGame() {
+        if (Events.enabled()) {
+            Events.GameStartEvent event = new Events.GameStartEvent();
+            event.white = _white.getClass().getSimpleName();
+            event.black = _black.getClass().getSimpleName();
+            event.commit();
+        }
+    }
+
+    /**
+     * Note the end of the current game, won by _winner (or abandoned if
+     * it is null): stop the players' pondering, and tell the flight
+     * recorder.
+     */
+    private void endGame() {
+        _white.stopPondering();
+        _black.stopPondering();
+        if (Events.enabled()) {
+            Events.GameEndEvent event = new Events.GameEndEvent();
+            event.winner = _winner == null ? "none" : _winner.toName();
+            event.moves = _board.moveCount();
+            event.commit();
+        }
+    }
+
+    /**
+     * Command "manual <color>", where <color> is read from ARGS.
+     */
+    private void doManual(Tokenizer args) {
+        Piece color = nextColor(args);
+        args.end();
+        if (color == BLACK) {
+            _black.stopPondering();
             _black = _manualPlayerTemplate.create(BLACK, this);
-            break;
-        case "white":
+        } else {
+            _white.stopPondering();
             _white = _manualPlayerTemplate.create(WHITE, this);
-            break;
-        default:
-            assert false;
         }
         _view.update(this);
     }
 
     /**
-     * Command "auto <color>", where <color> is COLOR.group(1).
+     * Command "auto <color>", where <color> is read from ARGS.
      */
-    private void doAuto(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
+    private void doAuto(Tokenizer args) {
+        Piece color = nextColor(args);
+        args.end();
+        if (color == BLACK) {
+            _black.stopPondering();
             _black = _autoPlayerTemplate.create(BLACK, this);
-            break;
-        case "white":
+        } else {
+            _white.stopPondering();
             _white = _autoPlayerTemplate.create(WHITE, this);
-            break;
-        default:
-            assert false;
         }
         _view.update(this);
     }
 
     /**
-     * Command "toggle". The first group of MAT is a square designation.
+     * Command "toggle". ARGS holds a square designation.
      * The contents of the square are modified:
      * EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information.
      */
-    private void doToggle(Matcher mat) {
-        Square sq = sq(mat.group(1));
+    private void doToggle(Tokenizer args) {
+        Square sq = args.nextSquare();
+        args.end();
         Piece piece;
         switch (_board.get(sq)) {
         case EMPTY:
@@ -311,66 +723,400 @@ final class Controller {
         }
         _board.put(piece, sq);
         _board.clearUndo();
+        _recordValid = false;
     }
 
     /**
-     * Command "quit".
+     * Command "stop", whose (absent) arguments are in ARGS.  It makes
+     * an automated player that is thinking move at once (see move), and
+     * otherwise does nothing.
      */
-    private void doQuit(Matcher unused) {
+    private void doStop(Tokenizer args) {
+        args.end();
+    }
+
+    /**
+     * Command "quit", whose (absent) arguments are in ARGS.
+     */
+    private void doQuit(Tokenizer args) {
+        args.end();
         _playing = false;
     }
 
     /**
-     * Command "seed N" where N is the first group of MAT.
+     * Command "seed N" where N is read from ARGS.
      */
-    private void doSeed(Matcher mat) {
-        try {
-            setSeed(Long.parseLong(mat.group(1)));
-        } catch (NumberFormatException excp) {
-            throw error("number too large");
+    private void doSeed(Tokenizer args) {
+        long seed = args.nextNumber(Long.MAX_VALUE);
+        args.end();
+        setSeed(seed);
+    }
+
+    /**
+     * Command "limit N" where N is read from ARGS.
+     */
+    private void doLimit(Tokenizer args) {
+        int limit = (int) args.nextNumber(Integer.MAX_VALUE);
+        args.end();
+        _board.setMoveLimit(limit);
+    }
+
+    /**
+     * Command "time <color> <seconds> <increment>", where ARGS gives
+     * the color, its remaining time, and the time added after each of
+     * its moves, both in seconds.
+     */
+    private void doTime(Tokenizer args) {
+        Piece color = nextColor(args);
+        long remaining = (long) (args.nextDecimal() * MILLIS_PER_SECOND);
+        long increment = (long) (args.nextDecimal() * MILLIS_PER_SECOND);
+        args.end();
+        Clock clock = new Clock(remaining, increment);
+        if (color == WHITE) {
+            _whiteClock = clock;
+        } else {
+            _blackClock = clock;
         }
+        startClock(_board.turn());
     }
 
     /**
-     * Command "limit N" where N is the first captured group of MAT.
+     * Stop the clock of SIDE, if it has one, charging it for its move.
      */
-    private void doLimit(Matcher mat) {
-        try {
-            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
-        } catch (NumberFormatException excp) {
-            throw error("number too large");
+    private void stopClock(Piece side) {
+        if (clock(side) != null) {
+            clock(side).stop();
+        }
+    }
+
+    /**
+     * Stop the clock of SIDE, if it has one, and set it back to its
+     * initial time.
+     */
+    private void resetClock(Piece side) {
+        if (clock(side) != null) {
+            clock(side).reset();
+        }
+    }
+
+    /**
+     * Start the clock of SIDE, if it has one.
+     */
+    private void startClock(Piece side) {
+        if (clock(side) != null) {
+            clock(side).start();
+        }
+    }
+
+    /**
+     * Command "ponder on" or "ponder off", where the setting is read
+     * from ARGS.
+     */
+    private void doPonder(Tokenizer args) {
+        boolean on = args.nextWord("on");
+        if (!on && !args.nextWord("off")) {
+            throw args.badCommand();
+        }
+        args.end();
+        if (on && _searchPool != null) {
+            throw error("pondering is not available on a server");
         }
+        _pondering = on;
     }
 
     /**
-     * Execute a move command matched in MAT.
+     * Execute a move command read from ARGS.
      */
-    private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+    private void doMove(Tokenizer args) {
+        Move move = args.nextMove();
+        args.end();
+        if (move == null) {
+            throw error("invalid move");
+        }
+        Piece mover = _board.turn();
+        recordMove(move);
+        _board.makeMove(move);
+        stopClock(mover);
+        startClock(_board.turn());
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
                 _view.update(this);
                 _reporter.reportNote("%s wins.", _winner.toName());
+                endGame();
             }
         }
     }
 
     /**
-     * Dump the contents of the board on standard output.
+     * Add MOVE, about to be made on the current board, to the record of
+     * the current game, with the score and time of the search that
+     * found it, if any.
+     */
+    private void recordMove(Move move) {
+        SearchStats stats = _moveStats;
+        _moveStats = null;
+        if (_recorder == null) {
+            return;
+        }
+        if (!_board.isLegal(move)) {
+            _recordValid = false;
+        }
+        if (stats == null) {
+            _record.add(move, GameRecord.NO_SCORE, GameRecord.NO_TIME);
+        } else {
+            _record.add(move, moveScore(stats), stats.millis());
+        }
+    }
+
+    /**
+     * Return the score to record for a move found by the search
+     * described by STATS: its value, or NO_SCORE if it completed no
+     * iteration.
+     */
+    private static int moveScore(SearchStats stats) {
+        return stats.depth > 0 ? stats.score : GameRecord.NO_SCORE;
+    }
+
+    /**
+     * Write the record of the current game, if it has moves and can be
+     * replayed, and start a new one.
+     */
+    private void writeRecord() {
+        if (_recorder != null && _recordValid && _record.size() > 0) {
+            _record.setWinner(_winner);
+            try {
+                _recorder.write(_record);
+            } catch (IOException excp) {
+                reportError("Could not write game record: %s%n",
+                            excp.getMessage());
+                _recorder = null;
+            }
+        }
+        _record.clear();
+        _recordValid = true;
+    }
+
+    /**
+     * Print the statistics of the last search by an automated player on
+     * standard output.  ARGS holds the (absent) arguments.
+     */
+    private void doStats(Tokenizer args) {
+        args.end();
+        if (_lastStats == null) {
+            _out.printf("No search statistics.%n");
+        } else {
+            _out.printf("%s%n", _lastStats);
+        }
+    }
+
+    /**
+     * Command "metrics [json]", whose optional argument is read from
+     * ARGS.  Print the search metrics accumulated over all automated
+     * players so far (see Metrics), as text or as JSON.
+     */
+    private void doMetrics(Tokenizer args) {
+        boolean json = args.nextWord("json");
+        args.end();
+        if (json) {
+            _out.printf("%s%n", Metrics.SEARCH.toJson());
+        } else {
+            _out.print(Metrics.SEARCH.toText());
+        }
+    }
+
+    /**
+     * Command "analyze N [DEPTH]", where N and DEPTH are read from ARGS.
+     * Print the best N variations from the current position, searched to
+     * each depth up to DEPTH (default ANALYSIS_DEPTH) in turn.
+     */
+    private void doAnalyze(Tokenizer args) {
+        int numLines = (int) args.nextNumber(Integer.MAX_VALUE);
+        int depth = ANALYSIS_DEPTH;
+        if (args.hasNext()) {
+            depth = (int) args.nextNumber(Integer.MAX_VALUE);
+        }
+        args.end();
+        if (numLines == 0 || depth == 0) {
+            throw error("number of lines and depth must be positive");
+        }
+        if (_board.winner() != null) {
+            throw error("game is over");
+        }
+        if (_analyzer == null) {
+            if (_autoPlayerTemplate instanceof AI) {
+                _analyzer = (AI) _autoPlayerTemplate.create(null, this);
+            } else {
+                _analyzer = new AI(null, this);
+            }
+        }
+        _analyzer.analyze(_board, numLines, depth, this::printAnalysis);
+    }
+
+    /**
+     * Command "solve [NODES]", where NODES is read from ARGS.  Try to
+     * prove a forced win for the side to move, visiting at most NODES
+     * (default SOLVE_NODES) positions, and print the outcome and any
+     * winning line on standard output.
+     */
+    private void doSolve(Tokenizer args) {
+        long nodes = SOLVE_NODES;
+        if (args.hasNext()) {
+            nodes = args.nextNumber(Long.MAX_VALUE);
+        }
+        args.end();
+        if (_board.winner() != null) {
+            throw error("game is over");
+        }
+        Solver solver = new Solver(nodes, Solver.DEFAULT_LOG_SIZE);
+        String side = _board.turn().toName();
+        switch (solver.solve(_board)) {
+        case Solver.PROVEN:
+            _out.printf("%s wins:", side);
+            for (Move m : solver.line()) {
+                _out.printf(" %s", m);
+            }
+            _out.printf("%n");
+            break;
+        case Solver.DISPROVEN:
+            _out.printf("%s has no forced win.%n", side);
+            break;
+        default:
+            _out.printf("%s: no forced win found.%n", side);
+            break;
+        }
+        _out.printf("(%d positions)%n", solver.nodes());
+    }
+
+    /**
+     * Command "lookup", whose (absent) arguments are in ARGS.  Print the
+     * moves made from the current position in the games of the
+     * database, most frequent first, with the results of those games.
+     */
+    private void doLookup(Tokenizer args) {
+        args.end();
+        if (_database == null) {
+            throw error("no game database");
+        }
+        List<GameDatabase.MoveStats> moves = _database.query(_board);
+        int games, whiteWins, blackWins;
+        games = whiteWins = blackWins = 0;
+        for (GameDatabase.MoveStats stats : moves) {
+            games += stats.games();
+            whiteWins += stats.wins(WHITE);
+            blackWins += stats.wins(BLACK);
+        }
+        _out.printf("%d games: %d white wins, %d black wins%n",
+                    games, whiteWins, blackWins);
+        for (GameDatabase.MoveStats stats : moves) {
+            _out.printf("  %-7s %7d  %5.1f%% white  %5.1f%% black%n",
+                        stats.move() == null ? "(end)" : stats.move(),
+                        stats.games(),
+                        PERCENT * stats.wins(WHITE) / stats.games(),
+                        PERCENT * stats.wins(BLACK) / stats.games());
+        }
+    }
+
+    /**
+     * Command "bench [DEPTH]", where DEPTH is read from ARGS.  Search the
+     * built-in benchmark positions to DEPTH (default Bench.DEFAULT_DEPTH)
+     * with a fresh automated player, and print the number of positions
+     * visited, which is a signature of the engine's behavior, and the
+     * rate at which they were visited (see Bench).
+     */
+    private void doBench(Tokenizer args) {
+        int depth = Bench.DEFAULT_DEPTH;
+        if (args.hasNext()) {
+            depth = (int) args.nextNumber(Integer.MAX_VALUE);
+        }
+        args.end();
+        AI ai = _autoPlayerTemplate instanceof AI
+            ? (AI) _autoPlayerTemplate.create(null, null) : new AI();
+        Bench.run(ai, depth, _out);
+    }
+
+    /**
+     * Command "perft DEPTH", where DEPTH is read from ARGS.  Print the
+     * number of positions reached by DEPTH moves from the current
+     * position (see Perft), and the rate at which they were reached.
+     */
+    private void doPerft(Tokenizer args) {
+        int depth = (int) args.nextNumber(Integer.MAX_VALUE);
+        args.end();
+        long start = System.nanoTime();
+        long count = Perft.perft(new Board(_board), depth);
+        printPerft(depth, count, start);
+    }
+
+    /**
+     * Command "divide DEPTH", where DEPTH is read from ARGS.  As for
+     * "perft", but first print the count after each legal move, the
+     * counts being computed in parallel (or, when I have a search pool,
+     * one after another on it).
+     */
+    private void doDivide(Tokenizer args) {
+        int depth = (int) args.nextNumber(Integer.MAX_VALUE);
+        args.end();
+        if (depth == 0) {
+            throw error("depth must be positive");
+        }
+        long start = System.nanoTime();
+        List<Move> moves = _board.winner() != null ? List.of()
+            : _board.legalMoves(_board.turn());
+        long[] counts = Perft.divide(_board, moves, depth,
+                                     _searchPool != null ? null
+                                     : ForkJoinPool.commonPool());
+        long total = 0;
+        for (int k = 0; k < counts.length; k += 1) {
+            _out.printf("  %-7s %d%n", moves.get(k), counts[k]);
+            total += counts[k];
+        }
+        printPerft(depth, total, start);
+    }
+
+    /**
+     * Print COUNT, the number of positions found at DEPTH by a
+     * perft count started at time START (from System.nanoTime()), with
+     * the time taken.
+     */
+    private void printPerft(int depth, long count, long start) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                                    - start);
+        _out.printf("perft %d: %d positions (%d ms, %d positions/second)%n",
+                    depth, count, millis, millis == 0 ? 0
+                    : (long) (count * MILLIS_PER_SECOND / millis));
+    }
+
+    /**
+     * Print LINES, the variations found by analysis to DEPTH, on standard
+     * output.
+     */
+    private void printAnalysis(int depth, List<Variation> lines) {
+        _out.printf("depth %d%n", depth);
+        for (int k = 0; k < lines.size(); k += 1) {
+            _out.printf("%3d. %s%n", k + 1, lines.get(k));
+        }
+    }
+
+    /**
+     * Dump the contents of the board on standard output.  ARGS holds the
+     * (absent) arguments.
      */
-    private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+    private void doDump(Tokenizer args) {
+        args.end();
+        _out.printf("===%n%s===%n", _board);
     }
 
     /**
      * Undo back to before my last move, if there was one (otherwise does
-     * nothing).
+     * nothing).  ARGS holds the (absent) arguments.
      */
-    private void doUndo(Matcher unused) {
+    private void doUndo(Tokenizer args) {
+        args.end();
         if (_board.moveCount() > 1) {
             _board.undo();
             _board.undo();
+            _record.truncate(_record.size() - 2);
             _winner = null;
             _view.update(this);
         }
@@ -391,6 +1137,58 @@ final class Controller {
      */
     private boolean _playing;
 
+    /**
+     * The clocks of the two sides, or null for a side playing without
+     * a clock.
+     */
+    private Clock _whiteClock, _blackClock;
+
+    /**
+     * True iff automated players ponder on their opponents' time.
+     */
+    private boolean _pondering;
+
+    /**
+     * The AI used for the "analyze" command, or null if it has not yet
+     * been needed.
+     */
+    private AI _analyzer;
+
+    /**
+     * Statistics of the last search by an automated player, or null.
+     */
+    private SearchStats _lastStats;
+
+    /**
+     * The database answering "lookup" commands, or null.
+     */
+    private GameDatabase _database;
+
+    /**
+     * Statistics of the search that found the next move, or null.
+     */
+    private SearchStats _moveStats;
+
+    /**
+     * Destination of game records, or null.
+     */
+    private GameRecordWriter _recorder;
+
+    /**
+     * The moves of the current game, for _recorder.
+     */
+    private final GameRecord _record = new GameRecord();
+
+    /**
+     * True iff _record can be replayed from the initial position.
+     */
+    private boolean _recordValid = true;
+
+    /**
+     * True iff search statistics are reported after each automated move.
+     */
+    private boolean _logStats;
+
     /**
      * The object that is displaying the current game.
      */
@@ -409,7 +1207,49 @@ final class Controller {
     /**
      * Input source.
      */
-    private Scanner _input;
+    private BufferedReader _input;
+
+    /**
+     * True iff output and log are flushed after each prompt and entry.
+     */
+    private boolean _autoFlush = true;
+
+    /**
+     * Tokenizer for commands.
+     */
+    private final Tokenizer _tokenizer = new Tokenizer();
+
+    /**
+     * Destination of command output.
+     */
+    private PrintStream _out;
+
+    /**
+     * Pool on which automated players' moves are computed, or null.
+     */
+    private ExecutorService _searchPool;
+
+    /**
+     * True iff commands are polled for during searches.
+     */
+    private boolean _interruptible;
+
+    /**
+     * Thread on which automated players' moves are computed when I am
+     * interruptible and have no search pool, or null until needed.
+     */
+    private ExecutorService _searcher;
+
+    /**
+     * Mailbox for the progress of searches, or null if not reported.
+     */
+    private volatile Mailbox<SearchInfo> _searchInfo;
+
+    /**
+     * A command received during a search that ended with a move, to be
+     * executed after the move, or null.
+     */
+    private String _deferredCommand;
 
     /**
      * The current White and Black players, each created from
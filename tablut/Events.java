@@ -0,0 +1,198 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+
+/**
+ * Java Flight Recorder events describing the engine: each move chosen by
+ * an AI, each iteration of its search, the allocation of transposition
+ * tables, and the start and end of games.  The events are not
+ * registered with the flight recorder, and so are never recorded, until
+ * enable is called (by Main's --jfr option); until then, each place that
+ * would emit one only tests enabled().  A recording is made in the
+ * usual ways, e.g., with -XX:StartFlightRecording or jcmd.
+ *
+ * @author chenyuanshan
+ */
+class Events {
+
+    /**
+     * Register the events with the flight recorder and start emitting
+     * them.
+     */
+    static void enable() {
+        FlightRecorder.register(MoveEvent.class);
+        FlightRecorder.register(IterationEvent.class);
+        FlightRecorder.register(TableEvent.class);
+        FlightRecorder.register(GameStartEvent.class);
+        FlightRecorder.register(GameEndEvent.class);
+        _enabled = true;
+    }
+
+    /**
+     * Return true iff events are to be emitted.
+     */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /**
+     * The search for a move by an AI, lasting from the start of the
+     * search to the choice of the move.
+     */
+    @Name("tablut.Move")
+    @Label("AI Move")
+    @Category({ "Tablut", "Search" })
+    @Registered(false)
+    static class MoveEvent extends Event {
+
+        /**
+         * The side moving.
+         */
+        @Label("Side")
+        String side;
+
+        /**
+         * The move chosen.
+         */
+        @Label("Move")
+        String move;
+
+        /**
+         * The depth of the deepest completed iteration.
+         */
+        @Label("Depth")
+        int depth;
+
+        /**
+         * The value of the position found.
+         */
+        @Label("Score")
+        int score;
+
+        /**
+         * The number of positions visited.
+         */
+        @Label("Nodes")
+        long nodes;
+
+        /**
+         * True iff the search carried on from one made while pondering.
+         */
+        @Label("Ponder Hit")
+        boolean ponderHit;
+
+    }
+
+    /**
+     * One iteration of an iterative-deepening search that ran to
+     * completion.
+     */
+    @Name("tablut.Iteration")
+    @Label("Search Iteration")
+    @Category({ "Tablut", "Search" })
+    @Registered(false)
+    static class IterationEvent extends Event {
+
+        /**
+         * The depth searched.
+         */
+        @Label("Depth")
+        int depth;
+
+        /**
+         * The value found.
+         */
+        @Label("Score")
+        int score;
+
+        /**
+         * The positions visited by the search so far.
+         */
+        @Label("Nodes")
+        long nodes;
+
+        /**
+         * The best move found.
+         */
+        @Label("Best Move")
+        String bestMove;
+
+    }
+
+    /**
+     * The allocation of the storage of a transposition table, which
+     * happens when its first entry is stored.
+     */
+    @Name("tablut.TableAllocation")
+    @Label("Transposition Table Allocation")
+    @Category({ "Tablut", "Search" })
+    @Registered(false)
+    static class TableEvent extends Event {
+
+        /**
+         * The number of slots.
+         */
+        @Label("Slots")
+        int slots;
+
+    }
+
+    /**
+     * The start of a game by a Controller.
+     */
+    @Name("tablut.GameStart")
+    @Label("Game Start")
+    @Category("Tablut")
+    @Registered(false)
+    static class GameStartEvent extends Event {
+
+        /**
+         * The kind of player playing white.
+         */
+        @Label("White Player")
+        String white;
+
+        /**
+         * The kind of player playing black.
+         */
+        @Label("Black Player")
+        String black;
+
+    }
+
+    /**
+     * The end of a game by a Controller, either won or abandoned.
+     */
+    @Name("tablut.GameEnd")
+    @Label("Game End")
+    @Category("Tablut")
+    @Description("A game won, or abandoned by new or quit")
+    @Registered(false)
+    static class GameEndEvent extends Event {
+
+        /**
+         * The winner, or "none".
+         */
+        @Label("Winner")
+        String winner;
+
+        /**
+         * The number of moves made.
+         */
+        @Label("Moves")
+        int moves;
+
+    }
+
+    /**
+     * True iff events are to be emitted.
+     */
+    private static volatile boolean _enabled;
+
+}
@@ -7,6 +7,7 @@ import java.awt.Dimension;
 import javax.swing.JEditorPane;
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import java.io.InputStream;
 import java.io.IOException;
@@ -63,6 +64,10 @@ class GUI extends TopLevel implements View, Reporter {
                 new LayoutSpec("x", 0, "y", 0,
                         "height", 1,
                         "width", 3));
+        addLabel(" ", "SearchInfo",
+                new LayoutSpec("x", 0, "y", 2,
+                        "height", 1,
+                        "width", 3));
 
     }
 
@@ -134,6 +139,14 @@ class GUI extends TopLevel implements View, Reporter {
         }
     }
 
+    /**
+     * Return the next command from our widget or menus if there is one,
+     * without waiting, and otherwise null.
+     */
+    String pollCommand() {
+        return _pendingCommands.poll();
+    }
+
     @Override
     public void update(Controller controller) {
         Board board = controller.board();
@@ -205,6 +218,12 @@ class GUI extends TopLevel implements View, Reporter {
     public void reportMove(Move unused) {
     }
 
+    @Override
+    public void reportSearchInfo(SearchInfo info) {
+        String text = info.toString();
+        SwingUtilities.invokeLater(() -> setLabel("SearchInfo", text));
+    }
+
     /**
      * The board widget.
      */
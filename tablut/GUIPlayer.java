@@ -48,6 +48,11 @@ class GUIPlayer extends Player implements Reporter {
         }
     }
 
+    @Override
+    String pollCommand() {
+        return _gui.pollCommand();
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
         _gui.reportError(fmt, args);
@@ -62,6 +67,11 @@ class GUIPlayer extends Player implements Reporter {
     public void reportMove(Move unused) {
     }
 
+    @Override
+    public void reportSearchInfo(SearchInfo info) {
+        _gui.reportSearchInfo(info);
+    }
+
     /**
      * The GUI I use for input.
      */
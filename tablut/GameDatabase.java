@@ -0,0 +1,600 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * An index of the positions reached in the games of a game record file
+ * (see GameRecord), for looking up which moves were played from a
+ * position and how the games went.  The index is kept in a separate
+ * file (see indexName) holding one entry for each position of each
+ * game: the position's hash key (see Board.hashKey) and a word packing
+ * the offset of the game in the record file, the ply at which the
+ * position occurred, the code of the move made from it, and the winner
+ * of the game.  Entries are sorted by key (and then by game and ply), so
+ * that a lookup is a binary search of the mapped index followed by a
+ * scan of the matching entries, and never touches the games themselves.
+ *
+ * <p>The index also records how much of the record file it covers.
+ * Update indexes only the games appended since then: they are replayed
+ * in batches on a pool of threads, each batch giving a sorted run of
+ * entries in a temporary file, and the runs are then merged with the
+ * old index into a new one, which replaces it.  Memory use is bounded by
+ * the batch size and number of threads, however large the archive.
+ *
+ * @author chenyuanshan
+ */
+class GameDatabase implements Closeable {
+
+    /**
+     * The first int of an index file ("TGI1"), and the version of the
+     * format.
+     */
+    static final int MAGIC = 0x54474931, VERSION = 1;
+
+    /**
+     * Size in bytes of the index header: MAGIC, VERSION, the number of
+     * bytes of the record file covered, and the number of entries.
+     */
+    static final int HEADER_BYTES = 24;
+
+    /**
+     * Size in bytes of one entry.
+     */
+    static final int ENTRY_BYTES = 16;
+
+    /**
+     * Number of games replayed by one task when building the index.
+     */
+    static final int BATCH_GAMES = 4096;
+
+    /**
+     * Plies beyond this in a game are not indexed.
+     */
+    static final int MAX_PLY = (1 << 11) - 1;
+
+    /**
+     * Statistics of one move from a position: how many games continued
+     * with it and how many of those each side won.
+     */
+    static class MoveStats {
+        /**
+         * Statistics for MOVE (null for games that ended in the
+         * position).
+         */
+        MoveStats(Move move) {
+            _move = move;
+        }
+
+        /**
+         * Return my move, or null for games that ended.
+         */
+        Move move() {
+            return _move;
+        }
+
+        /**
+         * Return the number of games.
+         */
+        int games() {
+            return _games;
+        }
+
+        /**
+         * Return the number of games won by SIDE.
+         */
+        int wins(Piece side) {
+            return side == Piece.WHITE ? _whiteWins
+                : side == Piece.BLACK ? _blackWins : 0;
+        }
+
+        /**
+         * Count a game won by WINNER (null if unfinished).
+         */
+        void add(Piece winner) {
+            _games += 1;
+            if (winner == Piece.WHITE) {
+                _whiteWins += 1;
+            } else if (winner == Piece.BLACK) {
+                _blackWins += 1;
+            }
+        }
+
+        /**
+         * The move.
+         */
+        private final Move _move;
+
+        /**
+         * The numbers of games, and of white and black wins.
+         */
+        private int _games, _whiteWins, _blackWins;
+    }
+
+    /**
+     * The database of the games in the record file named RECORDS, whose
+     * index must exist (see update).
+     */
+    GameDatabase(String records) throws IOException {
+        Path path = Paths.get(indexName(records));
+        try (DataInputStream in =
+             new DataInputStream(Files.newInputStream(path))) {
+            _covered = readHeader(in, path);
+            _size = in.readLong();
+        }
+        _channel = FileChannel.open(path, READ);
+        for (long start = 0; start < _size * ENTRY_BYTES;
+             start += CHUNK_BYTES) {
+            long size = Math.min(CHUNK_BYTES, _size * ENTRY_BYTES - start);
+            _chunks.add(_channel.map(FileChannel.MapMode.READ_ONLY,
+                                     HEADER_BYTES + start, size));
+        }
+    }
+
+    /**
+     * Return the name of the index of the record file named RECORDS.
+     */
+    static String indexName(String records) {
+        return records + ".idx";
+    }
+
+    /**
+     * Bring the index of the record file named RECORDS up to date,
+     * creating it if necessary, replaying new games on THREADS threads.
+     * Return the number of games added.
+     */
+    static int update(String records, int threads) throws IOException {
+        Path index = Paths.get(indexName(records));
+        long covered = GameRecord.FILE_HEADER_BYTES;
+        if (Files.exists(index)) {
+            try (DataInputStream in =
+                 new DataInputStream(Files.newInputStream(index))) {
+                covered = readHeader(in, index);
+            }
+        }
+        List<Path> runs = new ArrayList<>();
+        ArrayDeque<Future<Path>> pending = new ArrayDeque<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Path dir = index.toAbsolutePath().getParent();
+        int games = 0;
+        try (GameRecordReader reader = new GameRecordReader(records)) {
+            reader.seek(covered);
+            if (reader.hasNext()) {
+                GameRecord record = new GameRecord();
+                while (reader.hasNext()) {
+                    Batch batch = new Batch();
+                    while (reader.hasNext() && batch.size() < BATCH_GAMES) {
+                        long offset = reader.position();
+                        reader.next(record);
+                        batch.add(offset, record);
+                    }
+                    games += batch.size();
+                    if (pending.size() >= 2 * threads) {
+                        runs.add(Tournament.await(pending.poll()));
+                    }
+                    pending.add(pool.submit(() -> batch.writeRun(dir)));
+                }
+                while (!pending.isEmpty()) {
+                    runs.add(Tournament.await(pending.poll()));
+                }
+                merge(index, reader.position(), runs);
+            } else if (!Files.exists(index)) {
+                merge(index, reader.position(), runs);
+            }
+        } finally {
+            pool.shutdownNow();
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Return the number of bytes of the record file that I cover.  Games
+     * after that are not indexed.
+     */
+    long covered() {
+        return _covered;
+    }
+
+    /**
+     * Return the number of positions indexed.
+     */
+    long size() {
+        return _size;
+    }
+
+    /**
+     * Return the statistics of the moves made from the position of
+     * BOARD, most frequent first.
+     */
+    List<MoveStats> query(Board board) {
+        long key = board.hashKey();
+        long lo = 0, hi = _size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        MoveStats[] byCode = new MoveStats[NO_MOVE + 1];
+        List<MoveStats> result = new ArrayList<>();
+        for (long k = lo; k < _size && key(k) == key; k += 1) {
+            long data = data(k);
+            int code = (int) (data >>> CODE_SHIFT) & NO_MOVE;
+            if (byCode[code] == null) {
+                byCode[code] = new MoveStats(code == NO_MOVE ? null
+                                             : GameRecord.decode(code));
+                result.add(byCode[code]);
+            }
+            byCode[code].add(GameRecord.winnerFor((int) data & WINNER_MASK));
+        }
+        result.sort(Comparator.comparingInt(MoveStats::games).reversed());
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _chunks.clear();
+        _channel.close();
+    }
+
+    /**
+     * Return the key of entry #K.
+     */
+    private long key(long k) {
+        long byteIndex = k * ENTRY_BYTES;
+        return _chunks.get((int) (byteIndex / CHUNK_BYTES))
+            .getLong((int) (byteIndex % CHUNK_BYTES));
+    }
+
+    /**
+     * Return the data of entry #K.
+     */
+    private long data(long k) {
+        long byteIndex = k * ENTRY_BYTES + Long.BYTES;
+        return _chunks.get((int) (byteIndex / CHUNK_BYTES))
+            .getLong((int) (byteIndex % CHUNK_BYTES));
+    }
+
+    /**
+     * Read the header of the index at PATH from IN, up to the entry
+     * count, and return the number of record bytes it covers.
+     */
+    private static long readHeader(DataInputStream in, Path path)
+        throws IOException {
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + ": not a game index");
+            }
+            return in.readLong();
+        } catch (EOFException excp) {
+            throw new IOException(path + ": not a game index");
+        }
+    }
+
+    /**
+     * Write to INDEX the merge of the entries of the present INDEX (if
+     * any) and of the sorted RUNS, recording that it covers COVERED
+     * bytes of the record file.  The new index is written beside the
+     * old one and then replaces it.
+     */
+    private static void merge(Path index, long covered, List<Path> runs)
+        throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        List<Run> inputs = new ArrayList<>();
+        Path tmp = Paths.get(index + ".tmp");
+        try {
+            long size = 0;
+            if (Files.exists(index)) {
+                inputs.add(new Run(index, HEADER_BYTES));
+            }
+            for (Path run : runs) {
+                inputs.add(new Run(run, 0));
+            }
+            for (Run run : inputs) {
+                size += run.remaining();
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp),
+                                              IO_BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(covered);
+                out.writeLong(size);
+                while (!queue.isEmpty()) {
+                    Run run = queue.poll();
+                    out.writeLong(run.key());
+                    out.writeLong(run.data());
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                }
+            }
+        } finally {
+            for (Run run : inputs) {
+                run.close();
+            }
+        }
+        Files.move(tmp, index, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * A batch of games from the record file, to be indexed together.
+     */
+    private static class Batch {
+        /**
+         * Add the game RECORD, found at OFFSET in the record file.
+         */
+        void add(long offset, GameRecord record) throws IOException {
+            if (offset >= MAX_OFFSET) {
+                throw new IOException("game record file too large to index");
+            }
+            int[] codes = new int[record.size()];
+            for (int k = 0; k < codes.length; k += 1) {
+                codes[k] = record.code(k);
+            }
+            _offsets.add(offset);
+            _games.add(codes);
+            _winners.add(GameRecord.winnerCode(record.winner()));
+        }
+
+        /**
+         * Return the number of games.
+         */
+        int size() {
+            return _games.size();
+        }
+
+        /**
+         * Replay my games, and write their entries, sorted, to a new
+         * temporary file in DIR, whose path is returned.  Plies after
+         * MAX_PLY or an illegal move are not indexed.
+         */
+        Path writeRun(Path dir) throws IOException {
+            int n = 0;
+            for (int[] codes : _games) {
+                n += Math.min(codes.length, MAX_PLY) + 1;
+            }
+            long[] keys = new long[n], data = new long[n];
+            Board board = new Board();
+            n = 0;
+            for (int g = 0; g < _games.size(); g += 1) {
+                int[] codes = _games.get(g);
+                long game = (long) _offsets.get(g) << OFFSET_SHIFT
+                    | _winners.get(g);
+                board.init();
+                for (int ply = 0; ply <= MAX_PLY; ply += 1) {
+                    Move move = ply < codes.length
+                        ? GameRecord.decode(codes[ply]) : null;
+                    boolean legal = move != null && board.isLegal(move);
+                    keys[n] = board.hashKey();
+                    data[n] = game | (long) ply << PLY_SHIFT
+                        | (long) (legal ? codes[ply] : NO_MOVE) << CODE_SHIFT;
+                    n += 1;
+                    if (!legal) {
+                        break;
+                    }
+                    board.makeMove(move);
+                }
+            }
+            sort(keys, data, n);
+            Path run = Files.createTempFile(dir, "run", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(run),
+                                              IO_BUFFER_SIZE))) {
+                for (int k = 0; k < n; k += 1) {
+                    out.writeLong(keys[k]);
+                    out.writeLong(data[k]);
+                }
+            }
+            return run;
+        }
+
+        /**
+         * The offsets of my games in the record file.
+         */
+        private final List<Long> _offsets = new ArrayList<>();
+
+        /**
+         * The move codes of my games.
+         */
+        private final List<int[]> _games = new ArrayList<>();
+
+        /**
+         * The winner codes of my games.
+         */
+        private final List<Integer> _winners = new ArrayList<>();
+    }
+
+    /**
+     * Sort the first N entries of KEYS into unsigned order, permuting
+     * DATA in the same way and keeping entries with equal keys in their
+     * original order.  This is a least-significant-digit radix sort by
+     * bytes.
+     */
+    static void sort(long[] keys, long[] data, int n) {
+        if (n == 0) {
+            return;
+        }
+        long[] keys2 = new long[n], data2 = new long[n];
+        int[] counts = new int[RADIX];
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            Arrays.fill(counts, 0);
+            for (int k = 0; k < n; k += 1) {
+                counts[(int) (keys[k] >>> shift) & (RADIX - 1)] += 1;
+            }
+            if (counts[(int) (keys[0] >>> shift) & (RADIX - 1)] == n) {
+                continue;
+            }
+            for (int d = 0, total = 0; d < RADIX; d += 1) {
+                int count = counts[d];
+                counts[d] = total;
+                total += count;
+            }
+            for (int k = 0; k < n; k += 1) {
+                int p = counts[(int) (keys[k] >>> shift) & (RADIX - 1)]++;
+                keys2[p] = keys[k];
+                data2[p] = data[k];
+            }
+            System.arraycopy(keys2, 0, keys, 0, n);
+            System.arraycopy(data2, 0, data, 0, n);
+        }
+    }
+
+    /**
+     * A sorted sequence of entries being read from a file for merging.
+     */
+    private static class Run implements Comparable<Run> {
+        /**
+         * A run of the entries in the file at PATH, starting at byte
+         * START.
+         */
+        Run(Path path, long start) throws IOException {
+            _remaining = (Files.size(path) - start) / ENTRY_BYTES;
+            _in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path), IO_BUFFER_SIZE));
+            _in.skipNBytes(start);
+        }
+
+        /**
+         * Return the number of entries not yet read.
+         */
+        long remaining() {
+            return _remaining;
+        }
+
+        /**
+         * Read the next entry, returning false if there is none.
+         */
+        boolean advance() throws IOException {
+            if (_remaining == 0) {
+                return false;
+            }
+            _key = _in.readLong();
+            _data = _in.readLong();
+            _remaining -= 1;
+            return true;
+        }
+
+        /**
+         * Return the key of the current entry.
+         */
+        long key() {
+            return _key;
+        }
+
+        /**
+         * Return the data of the current entry.
+         */
+        long data() {
+            return _data;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            int c = Long.compareUnsigned(_key, other._key);
+            return c != 0 ? c : Long.compareUnsigned(_data, other._data);
+        }
+
+        /**
+         * Close my file.
+         */
+        void close() throws IOException {
+            _in.close();
+        }
+
+        /**
+         * The source of entries.
+         */
+        private final DataInputStream _in;
+
+        /**
+         * The number of entries not yet read.
+         */
+        private long _remaining;
+
+        /**
+         * The current entry.
+         */
+        private long _key, _data;
+    }
+
+    /**
+     * Layout of the data word of an entry: from the most significant
+     * end, the offset of the game, the ply, the move code (NO_MOVE if
+     * none), and the winner code.
+     */
+    private static final int
+        OFFSET_SHIFT = 26, PLY_SHIFT = 15, CODE_SHIFT = 2, WINNER_MASK = 3;
+
+    /**
+     * Move code for a position from which no move was made.
+     */
+    private static final int NO_MOVE = (1 << (PLY_SHIFT - CODE_SHIFT)) - 1;
+
+    /**
+     * Limit on the offsets of games that can be indexed.
+     */
+    private static final long MAX_OFFSET = 1L << (Long.SIZE - OFFSET_SHIFT);
+
+    /**
+     * Size in bytes of the mapped chunks of the index (a multiple of
+     * ENTRY_BYTES).
+     */
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    /**
+     * Size of the buffers used to read and write runs.
+     */
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Radix of the sort.
+     */
+    private static final int RADIX = 1 << Byte.SIZE;
+
+    /**
+     * The channel to the index.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * The mapped entries of the index, in chunks of CHUNK_BYTES.
+     */
+    private final List<MappedByteBuffer> _chunks = new ArrayList<>();
+
+    /**
+     * The number of record bytes covered, and the number of entries.
+     */
+    private final long _covered, _size;
+
+}
@@ -0,0 +1,269 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Utils.*;
+
+/**
+ * The moves of one game of Tablut from the initial position, with the
+ * winner (if any) and, optionally, the engine's score and thinking time
+ * for each move.  Moves are held as int codes (see encode) so that a
+ * record can be read and written without creating objects, and one
+ * GameRecord may be reused for many games.
+ *
+ * <p>In a game record file (see GameRecordWriter and GameRecordReader),
+ * all numbers are big-endian.  The file starts with the int MAGIC and
+ * the int VERSION.  Each game follows as an int move count, a byte of
+ * flags (HAS_SCORES, HAS_TIMES), and a byte giving the winner (NO_WINNER,
+ * WHITE_WINS, or BLACK_WINS), and then, for each move, its int code,
+ * followed by its int score if HAS_SCORES is set and its int time if
+ * HAS_TIMES is set.
+ *
+ * @author chenyuanshan
+ */
+class GameRecord {
+
+    /**
+     * Score and time of a move for which they are unknown.
+     */
+    static final int NO_SCORE = Integer.MIN_VALUE, NO_TIME = -1;
+
+    /**
+     * The first int of a game record file ("TGR1"), and the version of
+     * the format.
+     */
+    static final int MAGIC = 0x54475231, VERSION = 1;
+
+    /**
+     * Sizes in bytes of the file header and of the header of a game.
+     */
+    static final int FILE_HEADER_BYTES = 8, GAME_HEADER_BYTES = 6;
+
+    /**
+     * Flags of a game in a file: its moves have scores, or times.
+     */
+    static final int HAS_SCORES = 1, HAS_TIMES = 2;
+
+    /**
+     * Codes for the winner of a game in a file.
+     */
+    static final int NO_WINNER = 0, WHITE_WINS = 1, BLACK_WINS = 2;
+
+    /**
+     * An empty record.
+     */
+    GameRecord() {
+    }
+
+    /**
+     * Return the code of MOVE.
+     */
+    static int encode(Move move) {
+        return move.from().index() * NUM_SQUARES + move.to().index();
+    }
+
+    /**
+     * Return the move whose code is CODE, or null if CODE is not the code
+     * of a move.
+     */
+    static Move decode(int code) {
+        if (code < 0 || code >= NUM_SQUARES * NUM_SQUARES) {
+            return null;
+        }
+        return Move.mv(Square.sq(code / NUM_SQUARES),
+                       Square.sq(code % NUM_SQUARES));
+    }
+
+    /**
+     * Remove all moves, and the winner.
+     */
+    void clear() {
+        _size = 0;
+        _winner = null;
+    }
+
+    /**
+     * Add MOVE, made after a search with value SCORE (NO_SCORE if
+     * unknown) that took MILLIS milliseconds (NO_TIME if unknown).
+     */
+    void add(Move move, int score, long millis) {
+        addCode(encode(move), score,
+                millis < 0 ? NO_TIME : (int) Math.min(millis,
+                                                      Integer.MAX_VALUE));
+    }
+
+    /**
+     * Add the move with code CODE, with SCORE and MILLIS as for add.
+     */
+    void addCode(int code, int score, int millis) {
+        if (_size == _codes.length) {
+            int capacity = 2 * _size;
+            _codes = Arrays.copyOf(_codes, capacity);
+            _scores = Arrays.copyOf(_scores, capacity);
+            _times = Arrays.copyOf(_times, capacity);
+        }
+        _codes[_size] = code;
+        _scores[_size] = score;
+        _times[_size] = millis;
+        _size += 1;
+    }
+
+    /**
+     * Remove all but the first N moves, and the winner.
+     */
+    void truncate(int n) {
+        _size = Math.min(_size, Math.max(0, n));
+        _winner = null;
+    }
+
+    /**
+     * Return the number of moves.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the code of move #K (numbering from 0).
+     */
+    int code(int k) {
+        return _codes[k];
+    }
+
+    /**
+     * Return move #K.
+     */
+    Move move(int k) {
+        return decode(_codes[k]);
+    }
+
+    /**
+     * Return the score of move #K, or NO_SCORE.
+     */
+    int score(int k) {
+        return _scores[k];
+    }
+
+    /**
+     * Return the time taken for move #K in milliseconds, or NO_TIME.
+     */
+    int millis(int k) {
+        return _times[k];
+    }
+
+    /**
+     * Return true iff some move has a score.
+     */
+    boolean hasScores() {
+        for (int k = 0; k < _size; k += 1) {
+            if (_scores[k] != NO_SCORE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true iff some move has a time.
+     */
+    boolean hasTimes() {
+        for (int k = 0; k < _size; k += 1) {
+            if (_times[k] != NO_TIME) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the winner (WHITE or BLACK), or null if the game was not
+     * finished.
+     */
+    Piece winner() {
+        return _winner;
+    }
+
+    /**
+     * Set the winner to WINNER (WHITE, BLACK, or null).
+     */
+    void setWinner(Piece winner) {
+        _winner = winner;
+    }
+
+    /**
+     * Return the flags with which I am written to a file.
+     */
+    int flags() {
+        return (hasScores() ? HAS_SCORES : 0) | (hasTimes() ? HAS_TIMES : 0);
+    }
+
+    /**
+     * Return the size in bytes of my entry in a file, given that it has
+     * FLAGS.
+     */
+    int bytes(int flags) {
+        return GAME_HEADER_BYTES + _size * moveBytes(flags);
+    }
+
+    /**
+     * Return the size in bytes of one move of a game with FLAGS.
+     */
+    static int moveBytes(int flags) {
+        return Integer.BYTES * (1 + ((flags & HAS_SCORES) != 0 ? 1 : 0)
+                                + ((flags & HAS_TIMES) != 0 ? 1 : 0));
+    }
+
+    /**
+     * Return the file code for WINNER.
+     */
+    static int winnerCode(Piece winner) {
+        return winner == Piece.WHITE ? WHITE_WINS
+            : winner == Piece.BLACK ? BLACK_WINS : NO_WINNER;
+    }
+
+    /**
+     * Return the winner whose file code is CODE.
+     */
+    static Piece winnerFor(int code) {
+        return code == WHITE_WINS ? Piece.WHITE
+            : code == BLACK_WINS ? Piece.BLACK : null;
+    }
+
+    /**
+     * Set BOARD to the initial position and make my moves on it.
+     */
+    void replay(Board board) {
+        board.init();
+        for (int k = 0; k < _size; k += 1) {
+            Move move = move(k);
+            if (move == null || !board.isLegal(move)) {
+                throw error("illegal move #%d in game record", k + 1);
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /**
+     * Initial capacity of the move arrays.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The move codes, scores, and times.
+     */
+    private int[] _codes = new int[INITIAL_CAPACITY],
+        _scores = new int[INITIAL_CAPACITY],
+        _times = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of moves.
+     */
+    private int _size;
+
+    /**
+     * The winner, or null.
+     */
+    private Piece _winner;
+
+}
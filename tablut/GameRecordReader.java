@@ -0,0 +1,169 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static tablut.GameRecord.*;
+
+/**
+ * Reads the games of a game record file (see GameRecord for the format)
+ * in order, or from any offset returned by position.  The file is read
+ * through read-only mappings of windows of MAP_WINDOW bytes, so that
+ * reading a game costs no system calls and no copying beyond filling
+ * in the GameRecord, and files larger than memory (or than 2GB) can be
+ * scanned.
+ *
+ * @author chenyuanshan
+ */
+class GameRecordReader implements Closeable {
+
+    /**
+     * Size in bytes of the part of the file mapped at once (larger if
+     * one game needs more).
+     */
+    static final long MAP_WINDOW = 1L << 26;
+
+    /**
+     * A reader of the file named FILENAME, positioned at its first game.
+     */
+    GameRecordReader(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        checkHeader(path);
+        _channel = FileChannel.open(path, READ);
+        _size = _channel.size();
+        _position = FILE_HEADER_BYTES;
+    }
+
+    /**
+     * Check that the file at PATH starts with a valid header, throwing
+     * an IOException if not.
+     */
+    static void checkHeader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < FILE_HEADER_BYTES
+                || header.getInt() != MAGIC) {
+                throw new IOException(path + ": not a game record file");
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException(path + ": unknown game record version");
+            }
+        }
+    }
+
+    /**
+     * Return true iff there is a game at my position.
+     */
+    boolean hasNext() {
+        return _position < _size;
+    }
+
+    /**
+     * Return the offset in the file of the next game.
+     */
+    long position() {
+        return _position;
+    }
+
+    /**
+     * Make POSITION, which should have been returned by position, the
+     * offset of the next game.
+     */
+    void seek(long position) {
+        _position = position;
+    }
+
+    /**
+     * Read the next game into RECORD, replacing its contents.
+     */
+    void next(GameRecord record) throws IOException {
+        int base = window(_position, GAME_HEADER_BYTES);
+        int count = _window.getInt(base);
+        int flags = _window.get(base + Integer.BYTES);
+        int winner = _window.get(base + Integer.BYTES + 1);
+        if (count < 0 || (flags & ~(HAS_SCORES | HAS_TIMES)) != 0
+            || winner < NO_WINNER || winner > BLACK_WINS) {
+            throw new IOException("corrupt game record");
+        }
+        int moveBytes = moveBytes(flags);
+        long length = GAME_HEADER_BYTES + (long) count * moveBytes;
+        int k = window(_position, length) + GAME_HEADER_BYTES;
+        record.clear();
+        for (int n = 0; n < count; n += 1, k += moveBytes) {
+            int p = k + Integer.BYTES;
+            int score = NO_SCORE, millis = NO_TIME;
+            if ((flags & HAS_SCORES) != 0) {
+                score = _window.getInt(p);
+                p += Integer.BYTES;
+            }
+            if ((flags & HAS_TIMES) != 0) {
+                millis = _window.getInt(p);
+            }
+            record.addCode(_window.getInt(k), score, millis);
+        }
+        record.setWinner(winnerFor(winner));
+        _position += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _window = null;
+        _channel.close();
+    }
+
+    /**
+     * Make sure that bytes START to START+LENGTH-1 of the file are in
+     * _window, and return the index of byte START in it.
+     */
+    private int window(long start, long length) throws IOException {
+        if (start + length > _size) {
+            throw new IOException("truncated game record");
+        }
+        if (_window == null || start < _windowStart
+            || start + length > _windowStart + _window.capacity()) {
+            long size = Math.min(_size - start, Math.max(MAP_WINDOW, length));
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("game record too large");
+            }
+            _window = _channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            _windowStart = start;
+        }
+        return (int) (start - _windowStart);
+    }
+
+    /**
+     * The channel to the file.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * The size of the file in bytes.
+     */
+    private final long _size;
+
+    /**
+     * The offset of the next game.
+     */
+    private long _position;
+
+    /**
+     * The currently mapped part of the file, or null.
+     */
+    private MappedByteBuffer _window;
+
+    /**
+     * The offset in the file at which _window starts.
+     */
+    private long _windowStart;
+
+}
@@ -0,0 +1,118 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.*;
+import static tablut.GameRecord.*;
+
+/**
+ * Appends GameRecords to a game record file (see GameRecord for the
+ * format).  Games are collected in a buffer and written through a
+ * channel opened for appending, so that an existing file is extended
+ * and never rewritten.  Data reach the file when the buffer fills, and
+ * on flush and close.
+ *
+ * @author chenyuanshan
+ */
+class GameRecordWriter implements Closeable {
+
+    /**
+     * Size in bytes of the output buffer.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * A writer appending to the file named FILENAME, which is created
+     * (with a header) if it does not exist or is empty.
+     */
+    GameRecordWriter(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        _channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+        if (_channel.size() == 0) {
+            putInt(MAGIC);
+            putInt(VERSION);
+        } else {
+            try {
+                GameRecordReader.checkHeader(path);
+            } catch (IOException excp) {
+                _channel.close();
+                throw excp;
+            }
+        }
+    }
+
+    /**
+     * Append RECORD.
+     */
+    void write(GameRecord record) throws IOException {
+        int flags = record.flags();
+        putInt(record.size());
+        putByte(flags);
+        putByte(winnerCode(record.winner()));
+        for (int k = 0; k < record.size(); k += 1) {
+            putInt(record.code(k));
+            if ((flags & HAS_SCORES) != 0) {
+                putInt(record.score(k));
+            }
+            if ((flags & HAS_TIMES) != 0) {
+                putInt(record.millis(k));
+            }
+        }
+    }
+
+    /**
+     * Write all buffered data to the file.
+     */
+    void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /**
+     * Buffer VALUE as an int.
+     */
+    private void putInt(int value) throws IOException {
+        if (_buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+        _buffer.putInt(value);
+    }
+
+    /**
+     * Buffer the low eight bits of VALUE as a byte.
+     */
+    private void putByte(int value) throws IOException {
+        if (!_buffer.hasRemaining()) {
+            flush();
+        }
+        _buffer.put((byte) value);
+    }
+
+    /**
+     * The channel to the file.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * Data not yet written to _channel.
+     */
+    private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+}
@@ -0,0 +1,203 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import ucb.util.CommandArgs;
+
+import static tablut.GameRecord.*;
+
+/**
+ * Converts between the text logs written by the --log option of Main
+ * and game record files (see GameRecord).  A text log is split into
+ * games at each "new" and "quit" command; moves and "undo" commands are
+ * replayed on a Board to find each game's moves and winner, and a
+ * comment of the form "# score S time T" after a move gives its score
+ * and time in milliseconds (Main writes these after the moves of its
+ * automated players).  Games set up with "toggle", or containing
+ * illegal moves, are skipped.  In the other direction, each game becomes
+ * a "new" command followed by its moves (with such comments where
+ * known), preceded by commands making both players manual, so that the
+ * text can be fed back to Main.
+ *
+ * @author chenyuanshan
+ */
+public class LogConverter {
+
+    /**
+     * Convert as directed by ARGS: --binary converts the text log named
+     * by the first remaining argument into a game record file named by
+     * the second, appending to it if it exists, and --text converts a
+     * game record file into a text log.
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--binary --text --={2}", args);
+        if (!options.ok()
+            || options.contains("--binary") == options.contains("--text")) {
+            System.err.println("Usage: java tablut.LogConverter"
+                               + " (--binary | --text) INPUT OUTPUT");
+            System.exit(1);
+        }
+        String input = options.get("--").get(0),
+            output = options.get("--").get(1);
+        try {
+            if (options.contains("--binary")) {
+                try (BufferedReader in =
+                     new BufferedReader(new FileReader(input));
+                     GameRecordWriter out = new GameRecordWriter(output)) {
+                    System.out.printf("%d games converted%n",
+                                      toBinary(in, out));
+                }
+            } else {
+                try (GameRecordReader in = new GameRecordReader(input);
+                     PrintWriter out = new PrintWriter(
+                         new BufferedWriter(new FileWriter(output)))) {
+                    System.out.printf("%d games converted%n",
+                                      toText(in, out));
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write the games of the text log IN to OUT, returning the number
+     * written.
+     */
+    static int toBinary(BufferedReader in, GameRecordWriter out)
+        throws IOException {
+        Board board = new Board();
+        GameRecord record = new GameRecord();
+        Tokenizer args = new Tokenizer();
+        boolean valid = true;
+        int games = 0;
+        board.init();
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            args.reset(line);
+            try {
+                if (args.isEmpty()) {
+                    continue;
+                } else if (args.atMove()) {
+                    Move move = args.nextMove();
+                    args.end();
+                    if (move == null || !board.isLegal(move)) {
+                        valid = false;
+                        continue;
+                    }
+                    record.add(move, commentValue(line, "score", NO_SCORE),
+                               commentValue(line, "time", NO_TIME));
+                    board.makeMove(move);
+                    if (record.winner() == null) {
+                        record.setWinner(board.winner());
+                    }
+                } else if (args.nextWord("new") || args.nextWord("quit")) {
+                    args.end();
+                    if (valid && record.size() > 0) {
+                        out.write(record);
+                        games += 1;
+                    }
+                    board.init();
+                    record.clear();
+                    valid = true;
+                } else if (args.nextWord("undo")) {
+                    args.end();
+                    if (board.moveCount() > 1) {
+                        board.undo();
+                        board.undo();
+                        record.truncate(record.size() - 2);
+                    }
+                } else if (args.nextWord("limit")) {
+                    int limit = (int) args.nextNumber(Integer.MAX_VALUE);
+                    args.end();
+                    board.setMoveLimit(limit);
+                } else if (args.nextWord("toggle")) {
+                    valid = false;
+                }
+            } catch (IllegalArgumentException excp) {
+                /* Main ignores erroneous commands, and so do we. */
+            }
+        }
+        if (valid && record.size() > 0) {
+            out.write(record);
+            games += 1;
+        }
+        return games;
+    }
+
+    /**
+     * Write the games read from IN to OUT as a text log, returning the
+     * number written.
+     */
+    static int toText(GameRecordReader in, PrintWriter out)
+        throws IOException {
+        GameRecord record = new GameRecord();
+        int games = 0;
+        out.println("manual white");
+        out.println("manual black");
+        while (in.hasNext()) {
+            in.next(record);
+            out.println("new");
+            for (int k = 0; k < record.size(); k += 1) {
+                Move move = record.move(k);
+                if (move == null) {
+                    throw new IOException("bad move code in game record");
+                }
+                out.print(move);
+                out.println(comment(record.score(k), record.millis(k)));
+            }
+            games += 1;
+        }
+        out.println("quit");
+        return games;
+    }
+
+    /**
+     * Return the comment giving SCORE and MILLIS, either of which may be
+     * unknown (NO_SCORE or NO_TIME), to follow a move in a text log, or
+     * the empty string if both are unknown.
+     */
+    static String comment(int score, long millis) {
+        if (score == NO_SCORE && millis == NO_TIME) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder("  #");
+        if (score != NO_SCORE) {
+            result.append(" score ").append(score);
+        }
+        if (millis != NO_TIME) {
+            result.append(" time ").append(millis);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the integer following the word KEY in the comment of LINE,
+     * or DEFLT if there is none.
+     */
+    private static int commentValue(String line, String key, int deflt) {
+        int start = line.indexOf('#');
+        if (start < 0) {
+            return deflt;
+        }
+        String[] words = line.substring(start + 1).trim().split("\\s+");
+        for (int k = 0; k + 1 < words.length; k += 1) {
+            if (words[k].equals(key)) {
+                try {
+                    return Integer.parseInt(words[k + 1]);
+                } catch (NumberFormatException excp) {
+                    return deflt;
+                }
+            }
+        }
+        return deflt;
+    }
+
+}
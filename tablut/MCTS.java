@@ -0,0 +1,474 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.lang.Math.*;
+
+import static tablut.Piece.*;
+
+/**
+ * A Player that chooses moves by Monte Carlo tree search.  From the
+ * current position, it repeatedly selects a path down a search tree
+ * using the UCT rule, adds the children of the node at the end of the
+ * path, plays the game out from there with nearly random moves, and
+ * records the result in every node along the path.  When its time is up,
+ * it plays the move that was explored most often.  Its time is shared
+ * out from its clock as an AI's is, or is THINK_TIME without a clock.
+ *
+ * Several threads run playouts on the same tree at once: the thread
+ * calling myMove, and helpers run on the controller's search pool if it
+ * has one, and otherwise on a pool shared by all MCTS players.  Each
+ * counts its visit to a node as soon as it selects it, before the result
+ * of its playout is known, and so as a loss for the side that moved to
+ * the node (a "virtual loss"), so that the others tend to explore
+ * different paths meanwhile.  The tree is locked only while a node is
+ * chosen and its statistics updated; moves are made and generated on
+ * each thread's own board outside the lock.
+ *
+ * @author chenyuanshan
+ */
+class MCTS extends Player {
+
+    /**
+     * Milliseconds spent choosing each move when there is no clock.
+     */
+    static final int THINK_TIME = 1000;
+
+    /**
+     * The pool running the helpers of players whose controllers have no
+     * search pool.
+     */
+    private static final ExecutorService WORKERS =
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "mcts");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The exploration constant in the UCT formula.
+     */
+    private static final double EXPLORATION = 1.4;
+
+    /**
+     * The maximum number of moves in a playout, after which the
+     * outcome is estimated from the material left.
+     */
+    private static final int PLAYOUT_LIMIT = 60;
+
+    /**
+     * The maximum number of nodes in the search tree.
+     */
+    private static final int MAX_NODES = 1 << 20;
+
+    /**
+     * The maximum length of a path from the root of the tree.
+     */
+    private static final int MAX_PATH = 512;
+
+    /**
+     * Initial numbers of defenders (including the king) and attackers,
+     * used to weigh material in playouts that reach PLAYOUT_LIMIT.
+     */
+    private static final int
+        DEFENDERS = Board.INITIAL_DEFENDERS.length + 1,
+        ATTACKERS = Board.INITIAL_ATTACKERS.length;
+
+    /**
+     * A new MCTS player with no piece or controller (intended to produce
+     * a template).
+     */
+    MCTS() {
+        this(null, null);
+    }
+
+    /**
+     * A new MCTS player playing PIECE under control of CONTROLLER.
+     */
+    MCTS(Piece piece, Controller controller) {
+        super(piece, controller);
+        _threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        MCTS result = new MCTS(piece, controller);
+        result._threads = _threads;
+        return result;
+    }
+
+    @Override
+    String myMove() {
+        if (board().turn() != myPiece() || board().winner() != null) {
+            return "No legal move";
+        } else {
+            _stopRequest = NO_STOP;
+            Move rst = findMove();
+            if (_stopRequest == CANCEL) {
+                return null;
+            }
+            _controller.reportMove(rst);
+            return rst.toString();
+        }
+    }
+
+    @Override
+    void stopMove(boolean play) {
+        _stopRequest = play ? PLAY : CANCEL;
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    /**
+     * Return a move for me from the current position, assuming there
+     * is a move.  A move that wins at once is played without searching,
+     * since playouts, in which most moves win for the stronger side,
+     * distinguish it too slowly from the rest.  Helpers that a busy pool
+     * has not started by the end of the move are cancelled rather than
+     * waited for, so that a search running on the same pool cannot wait
+     * on itself.
+     */
+    private Move findMove() {
+        Board root = new Board(board());
+        List<Move> moves = root.legalMoves(root.turn());
+        Board next = new Board();
+        for (Move move : moves) {
+            next.copy(root);
+            next.makeMove(move);
+            if (next.winner() == myPiece()) {
+                return move;
+            }
+        }
+        _tree = new NodeStore();
+        _tree.expand(0, moves, root.turn() == WHITE);
+        Clock clock = _controller.clock(myPiece());
+        long deadline = System.currentTimeMillis()
+            + (clock == null ? THINK_TIME : AI.moveBudget(clock, root));
+        ExecutorService pool = _controller.searchPool();
+        if (pool == null) {
+            pool = WORKERS;
+        }
+        List<BackgroundTask> helpers = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            Random random =
+                new Random(_controller.randInt(Integer.MAX_VALUE));
+            helpers.add(new BackgroundTask(pool, () ->
+                                           runPlayouts(root, deadline,
+                                                       random)));
+        }
+        runPlayouts(root, deadline,
+                    new Random(_controller.randInt(Integer.MAX_VALUE)));
+        for (BackgroundTask helper : helpers) {
+            helper.finish();
+        }
+        synchronized (_tree) {
+            return _tree.mostVisited(0);
+        }
+    }
+
+    /**
+     * Set the number of threads running playouts for each move to
+     * THREADS, which must be positive.  Players I create inherit it.
+     */
+    void setThreads(int threads) {
+        _threads = threads;
+    }
+
+    /**
+     * Run playouts from position ROOT until DEADLINE (in milliseconds)
+     * or a call of stopMove, using RANDOM to choose moves.
+     */
+    private void runPlayouts(Board root, long deadline, Random random) {
+        int[] path = new int[MAX_PATH];
+        while (System.currentTimeMillis() < deadline
+               && _stopRequest == NO_STOP) {
+            Board board = new Board(root);
+            int length = select(board, path);
+            double result = playout(board, random);
+            synchronized (_tree) {
+                for (int k = 0; k < length; k += 1) {
+                    _tree.addResult(path[k], result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk down the tree from the root, making the selected moves on
+     * BOARD and recording the nodes visited in PATH, and expand the last
+     * node if it has been visited before.  Each node on the path has its
+     * visit count increased.  Returns the length of the path.
+     */
+    private int select(Board board, int[] path) {
+        int node = 0, length = 0;
+        boolean expanded, firstVisit;
+        synchronized (_tree) {
+            _tree.visit(node);
+            expanded = _tree.expanded(node);
+            firstVisit = _tree.visits(node) == 1;
+        }
+        while (true) {
+            path[length] = node;
+            length += 1;
+            if (board.winner() != null || length == MAX_PATH) {
+                return length;
+            }
+            List<Move> moves = null;
+            if (!expanded) {
+                if (firstVisit) {
+                    return length;
+                }
+                moves = board.legalMoves(board.turn());
+            }
+            Move move;
+            synchronized (_tree) {
+                if (moves != null && !_tree.expanded(node)
+                    && !_tree.expand(node, moves, board.turn() == WHITE)) {
+                    return length;
+                }
+                node = _tree.bestChild(node);
+                _tree.visit(node);
+                move = _tree.move(node);
+                expanded = _tree.expanded(node);
+                firstVisit = _tree.visits(node) == 1;
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /**
+     * Play out the game on BOARD with random moves, except that the king
+     * always escapes when it can.  Return 1 if white wins, 0 if black
+     * wins, and an estimate between the two if the game lasts longer than
+     * PLAYOUT_LIMIT moves.  Uses RANDOM to choose moves.
+     */
+    private double playout(Board board, Random random) {
+        for (int k = 0; k < PLAYOUT_LIMIT && board.winner() == null;
+             k += 1) {
+            List<Move> moves = board.legalMoves(board.turn());
+            Move move = moves.get(random.nextInt(moves.size()));
+            if (board.turn() == WHITE) {
+                Square king = board.kingPosition();
+                for (Move m : moves) {
+                    if (m.from() == king && m.to().isEdge()) {
+                        move = m;
+                        break;
+                    }
+                }
+            }
+            board.makeMove(move);
+        }
+        if (board.winner() == WHITE) {
+            return 1;
+        } else if (board.winner() == BLACK) {
+            return 0;
+        }
+        int white = 0, black = 0;
+        for (Piece p : board.returnboard().values()) {
+            if (p.side() == WHITE) {
+                white += 1;
+            } else if (p == BLACK) {
+                black += 1;
+            }
+        }
+        return (double) (white * ATTACKERS)
+            / (white * ATTACKERS + black * DEFENDERS);
+    }
+
+    /**
+     * The search tree, stored in parallel arrays indexed by node number.
+     * Node 0 is the root, and the children of each expanded node occupy
+     * consecutive node numbers.  Each node records the move that leads
+     * to it, how often it has been visited, and the total of the playout
+     * results through it, counted from the point of view of the side
+     * that made that move (1 for a win, 0 for a loss).  A visit whose
+     * result is not yet known thus counts as a loss for that side.  All
+     * access must be synchronized on the NodeStore.
+     */
+    private static class NodeStore {
+
+        /**
+         * Initial capacity, in nodes.
+         */
+        private static final int INITIAL_CAPACITY = 1 << 12;
+
+        /**
+         * A store containing only an unexpanded root.
+         */
+        NodeStore() {
+            _moves = new Move[INITIAL_CAPACITY];
+            _firstChild = new int[INITIAL_CAPACITY];
+            _numChildren = new int[INITIAL_CAPACITY];
+            _visits = new int[INITIAL_CAPACITY];
+            _wins = new double[INITIAL_CAPACITY];
+            _whiteMoved = new boolean[INITIAL_CAPACITY];
+            _size = 1;
+        }
+
+        /**
+         * Return the move leading to NODE.
+         */
+        Move move(int node) {
+            return _moves[node];
+        }
+
+        /**
+         * Return the number of visits to NODE.
+         */
+        int visits(int node) {
+            return _visits[node];
+        }
+
+        /**
+         * Return true iff NODE's children have been added.
+         */
+        boolean expanded(int node) {
+            return _numChildren[node] > 0;
+        }
+
+        /**
+         * Count a visit to NODE.
+         */
+        void visit(int node) {
+            _visits[node] += 1;
+        }
+
+        /**
+         * Add playout RESULT (1 for a white win, 0 for a black win) to
+         * the total for NODE.
+         */
+        void addResult(int node, double result) {
+            _wins[node] += _whiteMoved[node] ? result : 1 - result;
+        }
+
+        /**
+         * Add children of NODE for each of MOVES, which are moves by
+         * white iff WHITEMOVES.  Returns false, adding nothing, if MOVES
+         * is empty or the store is full.
+         */
+        boolean expand(int node, List<Move> moves, boolean whiteMoves) {
+            int n = moves.size();
+            if (n == 0 || _size + n > MAX_NODES) {
+                return false;
+            }
+            if (_size + n > _moves.length) {
+                int capacity = min(MAX_NODES, 2 * (_size + n));
+                _moves = Arrays.copyOf(_moves, capacity);
+                _firstChild = Arrays.copyOf(_firstChild, capacity);
+                _numChildren = Arrays.copyOf(_numChildren, capacity);
+                _visits = Arrays.copyOf(_visits, capacity);
+                _wins = Arrays.copyOf(_wins, capacity);
+                _whiteMoved = Arrays.copyOf(_whiteMoved, capacity);
+            }
+            _firstChild[node] = _size;
+            _numChildren[node] = n;
+            for (Move m : moves) {
+                _moves[_size] = m;
+                _whiteMoved[_size] = whiteMoves;
+                _size += 1;
+            }
+            return true;
+        }
+
+        /**
+         * Return the child of NODE with the highest UCT value for the
+         * side to move there.
+         */
+        int bestChild(int node) {
+            double logVisits = log(_visits[node]);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int c = _firstChild[node],
+                     end = c + _numChildren[node]; c < end; c += 1) {
+                if (_visits[c] == 0) {
+                    return c;
+                }
+                double mean = _wins[c] / _visits[c];
+                double value =
+                    mean + EXPLORATION * sqrt(logVisits / _visits[c]);
+                if (value > bestValue) {
+                    best = c;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Return the move to the most visited child of NODE.
+         */
+        Move mostVisited(int node) {
+            int best = _firstChild[node];
+            for (int c = best, end = c + _numChildren[node]; c < end;
+                 c += 1) {
+                if (_visits[c] > _visits[best]) {
+                    best = c;
+                }
+            }
+            return _moves[best];
+        }
+
+        /**
+         * The move leading to each node.
+         */
+        private Move[] _moves;
+
+        /**
+         * The first child and number of children of each node (0 if
+         * not expanded).
+         */
+        private int[] _firstChild, _numChildren;
+
+        /**
+         * The number of visits to each node.
+         */
+        private int[] _visits;
+
+        /**
+         * The total playout results through each node, for the side
+         * that moved to it.
+         */
+        private double[] _wins;
+
+        /**
+         * True for each node reached by a move of white.
+         */
+        private boolean[] _whiteMoved;
+
+        /**
+         * The number of nodes in use.
+         */
+        private int _size;
+    }
+
+    /**
+     * The number of threads running playouts.
+     */
+    private int _threads;
+
+    /**
+     * The tree for the current search.
+     */
+    private NodeStore _tree;
+
+    /**
+     * Values of _stopRequest: myMove is not asked to stop, or is asked
+     * to play its best move so far, or to return null.
+     */
+    private static final int NO_STOP = 0, PLAY = 1, CANCEL = 2;
+
+    /**
+     * The request made by stopMove during the current call of myMove.
+     */
+    private volatile int _stopRequest;
+
+}
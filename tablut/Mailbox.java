@@ -0,0 +1,36 @@
+package tablut;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single-slot mailbox through which one thread passes its latest
+ * value of something to another.  Posting replaces any value not yet
+ * taken, so the poster never waits and the taker sees only the latest
+ * value.  Neither operation locks.
+ *
+ * @author chenyuanshan
+ */
+class Mailbox<T> {
+
+    /**
+     * Make VALUE the content of the mailbox, discarding any previous
+     * content.
+     */
+    void post(T value) {
+        _slot.set(value);
+    }
+
+    /**
+     * Remove and return the content of the mailbox, or return null if
+     * it is empty.
+     */
+    T take() {
+        return _slot.getAndSet(null);
+    }
+
+    /**
+     * The content, or null.
+     */
+    private final AtomicReference<T> _slot = new AtomicReference<>();
+
+}
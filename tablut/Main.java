@@ -1,9 +1,13 @@
 package tablut;
 
 import java.util.List;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 import static tablut.Utils.error;
@@ -18,28 +22,125 @@ import ucb.util.CommandArgs;
 public class Main {
 
     /**
-     * The main program.  ARGS may contain the option --display.
+     * The line printed at the start of each session.
+     */
+    static final String GREETING = "Tablut 61B, staff version 1.0";
+
+    /**
+     * Size in bytes of the input and output buffers in batch mode.
+     */
+    static final int BATCH_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The main program.  ARGS may contain the option --display,
+     * --mcts to use Monte Carlo tree search for automated players,
+     * --stats to report search statistics after each automated move,
+     * --weights=FILE to read evaluation weights from FILE,
+     * --nnue=FILE to evaluate with the network in FILE instead,
+     * --batch to buffer input and output heavily when running scripts,
+     * --binlog=FILE to append a binary record of each game to FILE
+     * (see GameRecord), --db=FILE to answer "lookup" commands from
+     * the games recorded in FILE, first bringing its index up to date
+     * (see GameDatabase), --verbose to print the progress of
+     * searches (which the GUI always shows), --jfr to emit flight
+     * recorder events (see Events), and --metrics=FILE to write the
+     * search metrics (see Metrics) to FILE on exit, as JSON if its
+     * name ends in ".json" and otherwise as text.
+     * With --games=N or --sprt, it instead plays a headless tournament
+     * (see runTournament), and with --server=PORT it serves games on
+     * local TCP port PORT (see Server), running at most --threads
+     * searches at once.  With --bench[=DEPTH], it searches a fixed set
+     * of positions and prints a node-count signature and the search
+     * speed (see Bench).
      */
     public static void main(String... args) {
 
         CommandArgs options =
                 new CommandArgs(
-                "--display --testing --strict --log={0,1} --={0,2}",
+                "--display --testing --strict --mcts --stats"
+                + " --log={0,1} --weights={0,1} --nnue={0,1} --={0,2}"
+                + " --games={0,1} --threads={0,1} --first={0,1}"
+                + " --second={0,1} --seed={0,1} --opening={0,1}"
+                + " --limit={0,1} --record={0,1} --sprt={0,1}"
+                + " --server={0,1} --batch --binlog={0,1} --db={0,1}"
+                + " --verbose --bench={0,1} --jfr --metrics={0,1}",
                         args);
         if (!options.ok()) {
             System.err.println(
-                    "Usage: java tablut.Main [--display]"
-                    + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                    "Usage: java tablut.Main [--display] [--mcts] [--stats]"
+                    + " [--log=FILE] [--weights=FILE] [--nnue=FILE]"
+                    + " [--strict] [--batch] [--binlog=FILE] [--db=FILE]"
+                    + " [--verbose] [--jfr] [--metrics=FILE]"
+                    + " [INPUT [OUTPUT]]");
+            System.err.println(
+                    "       java tablut.Main --games=N [--threads=N]"
+                    + " [--first=ENGINE] [--second=ENGINE] [--seed=N]"
+                    + " [--opening=N] [--limit=N] [--record=FILE]"
+                    + " [--sprt=ELO0,ELO1[,ALPHA,BETA]]");
+            System.err.println(
+                    "       java tablut.Main --server=PORT [--threads=N]"
+                    + " [--mcts] [--weights=FILE] [--nnue=FILE]");
+            System.err.println(
+                    "       java tablut.Main --bench[=DEPTH]"
+                    + " [--weights=FILE] [--nnue=FILE]");
             System.exit(1);
         }
 
+        if (options.contains("--jfr")) {
+            Events.enable();
+        }
+        if (options.contains("--metrics")) {
+            dumpMetricsAtExit(options.getFirst("--metrics"));
+        }
+
+        if (options.contains("--server")) {
+            try {
+                new Server(intOption(options, "--server", 0),
+                           autoPlayer(options),
+                           intOption(options, "--threads",
+                                     Runtime.getRuntime()
+                                     .availableProcessors())).serve();
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+            }
+            System.exit(1);
+        }
+
+        if (options.contains("--bench")) {
+            try {
+                Player template = autoPlayer(options);
+                int depth = Bench.DEFAULT_DEPTH;
+                if (!options.get("--bench").isEmpty()) {
+                    depth = intOption(options, "--bench", depth);
+                }
+                Bench.run(template instanceof AI ? (AI) template : new AI(),
+                          depth, System.out);
+                System.exit(0);
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--games") || options.contains("--sprt")) {
+            try {
+                runTournament(options);
+                System.exit(0);
+            } catch (IllegalArgumentException | IllegalStateException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        boolean batch = options.contains("--batch");
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
                 System.setIn(new FileInputStream(files.get(0)));
                 if (files.size() > 1) {
                     FileOutputStream out = new FileOutputStream(files.get(1));
-                    System.setOut(new PrintStream(out, true));
+                    System.setOut(batch ? batchOutput(out)
+                                  : new PrintStream(out, true));
                 }
             } catch (IOException excp) {
                 System.err.printf("Could not open file: %s%n",
@@ -53,9 +154,17 @@ public class Main {
                 /* Ignore IOException. */
             }
         }
+        if (batch) {
+            System.setIn(new BufferedInputStream(System.in,
+                                                 BATCH_BUFFER_SIZE));
+            if (files.size() < 2) {
+                System.setOut(batchOutput(
+                    new FileOutputStream(FileDescriptor.out)));
+            }
+        }
 
         Controller control = getController(options);
-        System.out.println("Tablut 61B, staff version 1.0");
+        System.out.println(GREETING);
 
         try {
             control.play();
@@ -69,6 +178,159 @@ public class Main {
 
     }
 
+    /**
+     * Play a tournament as directed by OPTIONS: --games=N games between
+     * the engines described by --first and --second (default "ai"; see
+     * Tournament.Engine.parse) on --threads threads (default one per
+     * processor), each starting with --opening random moves chosen
+     * using --seed, under move limit --limit (0 for none).  Records of
+     * the games go to the file given by --record, if any.  With
+     * --sprt=ELO0,ELO1[,ALPHA,BETA], the games are instead played in
+     * pairs as an Sprt test, until it reaches a decision or --games
+     * (default unlimited) games have been played.
+     */
+    private static void runTournament(CommandArgs options) {
+        Tournament.Engine first =
+            Tournament.Engine.parse("first", stringOption(options, "--first",
+                                                          "ai"));
+        Tournament.Engine second =
+            Tournament.Engine.parse("second",
+                                    stringOption(options, "--second", "ai"));
+        int games = intOption(options, "--games",
+                              options.contains("--sprt") ? Integer.MAX_VALUE
+                              : 0);
+        int threads = intOption(options, "--threads",
+                                Runtime.getRuntime().availableProcessors());
+        if (threads <= 0) {
+            throw error("number of threads must be positive");
+        }
+        long seed = intOption(options, "--seed", 0);
+        Tournament tournament =
+            new Tournament(first, second, seed,
+                           intOption(options, "--opening",
+                                     Tournament.DEFAULT_OPENING_PLIES),
+                           intOption(options, "--limit",
+                                     Tournament.DEFAULT_MOVE_LIMIT));
+        PrintStream records = null;
+        if (options.contains("--record")) {
+            try {
+                records = new PrintStream(options.getFirst("--record"));
+            } catch (IOException excp) {
+                throw error("Could not open record file");
+            }
+        }
+        if (options.contains("--sprt")) {
+            sprt(tournament, options.getFirst("--sprt"))
+                .run(games, threads, records);
+        } else {
+            tournament.run(games, threads, records);
+        }
+        if (records != null) {
+            records.close();
+        }
+    }
+
+    /**
+     * Return an SPRT test of the games of TOURNAMENT with parameters
+     * SPEC, of the form ELO0,ELO1[,ALPHA,BETA].
+     */
+    private static Sprt sprt(Tournament tournament, String spec) {
+        String[] fields = spec.split(",");
+        if (fields.length != 2 && fields.length != 4) {
+            throw error("bad SPRT parameters");
+        }
+        try {
+            double alpha = Sprt.DEFAULT_ALPHA, beta = Sprt.DEFAULT_BETA;
+            if (fields.length == 4) {
+                alpha = Double.parseDouble(fields[2]);
+                beta = Double.parseDouble(fields[3]);
+            }
+            return new Sprt(tournament, Double.parseDouble(fields[0]),
+                            Double.parseDouble(fields[1]), alpha, beta);
+        } catch (NumberFormatException excp) {
+            throw error("bad SPRT parameters");
+        }
+    }
+
+    /**
+     * Return the value of option NAME in OPTIONS, or DEFLT if it is
+     * absent.
+     */
+    private static String stringOption(CommandArgs options, String name,
+                                       String deflt) {
+        return options.contains(name) ? options.getFirst(name) : deflt;
+    }
+
+    /**
+     * Return the non-negative integer value of option NAME in OPTIONS,
+     * or DEFLT if it is absent.
+     */
+    private static int intOption(CommandArgs options, String name,
+                                 int deflt) {
+        try {
+            int result = Integer.parseInt(stringOption(options, name,
+                                                       "" + deflt));
+            if (result < 0) {
+                throw error("bad value for %s", name);
+            }
+            return result;
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /**
+     * Arrange to write the search metrics to the file named FILENAME
+     * when the program exits: as JSON if FILENAME ends in ".json", and
+     * otherwise as text.
+     */
+    private static void dumpMetricsAtExit(String fileName) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (PrintStream out = new PrintStream(fileName)) {
+                if (fileName.endsWith(".json")) {
+                    out.println(Metrics.SEARCH.toJson());
+                } else {
+                    out.print(Metrics.SEARCH.toText());
+                }
+            } catch (IOException excp) {
+                System.err.printf("Could not write metrics: %s%n",
+                                  excp.getMessage());
+            }
+        }, "metrics"));
+    }
+
+    /**
+     * Return a stream writing to OUT through a buffer of
+     * BATCH_BUFFER_SIZE bytes, flushed only when full or on request.
+     */
+    static PrintStream batchOutput(OutputStream out) {
+        return new PrintStream(new BufferedOutputStream(out,
+                                                        BATCH_BUFFER_SIZE),
+                               false);
+    }
+
+    /**
+     * Return the template for automated players indicated by OPTIONS.
+     */
+    static Player autoPlayer(CommandArgs options) {
+        if (options.contains("--mcts")) {
+            return new MCTS();
+        }
+        Weights weights = Weights.DEFAULT;
+        NNUE network = null;
+        try {
+            if (options.contains("--weights")) {
+                weights = Weights.load(options.getFirst("--weights"));
+            }
+            if (options.contains("--nnue")) {
+                network = NNUE.load(options.getFirst("--nnue"));
+            }
+        } catch (IOException excp) {
+            throw error("Could not read evaluator: %s", excp.getMessage());
+        }
+        return new AI(weights, network);
+    }
+
     /**
      * Return an appropriate Controller as indicated by OPTIONS.
      */
@@ -86,7 +348,9 @@ public class Main {
             view = gui;
         } else {
             gui = null;
-            reporter = new TextReporter();
+            TextReporter text = new TextReporter();
+            text.setVerbose(options.contains("--verbose"));
+            reporter = text;
             view = new NullView();
         }
         if (!options.contains("--testing") && options.contains("--display")) {
@@ -104,7 +368,36 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                new AI(), options.contains("--strict"));
+        Controller controller =
+            new Controller(view, log, reporter, manualPlayer,
+                           autoPlayer(options), options.contains("--strict"));
+        if (options.contains("--binlog")) {
+            try {
+                controller.setRecorder(
+                    new GameRecordWriter(options.getFirst("--binlog")));
+            } catch (IOException excp) {
+                throw error("Could not open game record file: %s",
+                            excp.getMessage());
+            }
+        }
+        if (options.contains("--db")) {
+            String records = options.getFirst("--db");
+            try {
+                GameDatabase.update(records,
+                                    Runtime.getRuntime().availableProcessors());
+                controller.setDatabase(new GameDatabase(records));
+            } catch (IOException | IllegalStateException excp) {
+                throw error("Could not open game database: %s",
+                            excp.getMessage());
+            }
+        }
+        controller.setInterruptible(manualPlayer instanceof GUIPlayer
+                                    || (System.console() != null
+                                        && options.get("--").isEmpty()));
+        controller.setSearchInfo(gui != null
+                                 || options.contains("--verbose"));
+        controller.setLogStats(options.contains("--stats"));
+        controller.setAutoFlush(!options.contains("--batch"));
+        return controller;
     }
 }
@@ -0,0 +1,252 @@
+package tablut;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Counters of the work done by searches, and a histogram of the time
+ * taken to choose each move, shared by all the threads of a program.
+ * To keep threads from contending for them, each thread adds to its own
+ * stripe of counters, padded on both sides so that no two threads'
+ * stripes share a cache line, and the stripes are summed only when the
+ * metrics are read.  A thread's stripe is written only by that thread,
+ * with opaque accesses, so that readers see whole values without any
+ * synchronization on the writer's side.  Stripes outlive their threads,
+ * so that nothing counted is lost.
+ *
+ * Think times are kept in buckets whose bounds are powers of two
+ * milliseconds, from which percentiles are estimated to within a factor
+ * of two.
+ *
+ * @author chenyuanshan
+ */
+class Metrics {
+
+    /**
+     * The metrics of the searches of all AIs.
+     */
+    static final Metrics SEARCH = new Metrics();
+
+    /**
+     * Indices of the counters.
+     */
+    static final int NODES = 0, CUTOFFS = 1, HASH_PROBES = 2,
+        HASH_HITS = 3, EVALUATIONS = 4;
+
+    /**
+     * The names of the counters, indexed by the constants above.
+     */
+    static final String[] NAMES = {
+        "nodes", "cutoffs", "hash_probes", "hash_hits", "evaluations"
+    };
+
+    /**
+     * The number of think-time buckets.  Bucket 0 counts times of 0 ms,
+     * and bucket K > 0 times from 2**(K-1) to 2**K - 1 ms.
+     */
+    static final int NUM_BUCKETS = Long.SIZE;
+
+    /**
+     * The percentiles of think time reported.
+     */
+    static final int[] PERCENTILES = { 50, 90, 99 };
+
+    /**
+     * Add the counts of the search described by STATS to the current
+     * thread's counters.
+     */
+    void add(SearchStats stats) {
+        long[] stripe = stripe();
+        increment(stripe, COUNTERS + NODES, stats.nodes);
+        increment(stripe, COUNTERS + CUTOFFS, stats.cutoffs);
+        increment(stripe, COUNTERS + HASH_PROBES, stats.hashProbes);
+        increment(stripe, COUNTERS + HASH_HITS, stats.hashHits);
+        increment(stripe, COUNTERS + EVALUATIONS, stats.evaluations);
+    }
+
+    /**
+     * Record that choosing a move took MILLIS milliseconds.
+     */
+    void addThinkTime(long millis) {
+        long[] stripe = stripe();
+        millis = Math.max(0, millis);
+        increment(stripe, BUCKETS + Long.SIZE
+                  - Long.numberOfLeadingZeros(millis), 1);
+        increment(stripe, THINK_SUM, millis);
+        if (millis > (long) SLOT.getOpaque(stripe, THINK_MAX)) {
+            SLOT.setOpaque(stripe, THINK_MAX, millis);
+        }
+    }
+
+    /**
+     * Return the total of counter K over all threads.
+     */
+    long count(int k) {
+        return sum(COUNTERS + k);
+    }
+
+    /**
+     * Return the number of think times recorded.
+     */
+    long moves() {
+        long result = 0;
+        for (int k = 0; k < NUM_BUCKETS; k += 1) {
+            result += sum(BUCKETS + k);
+        }
+        return result;
+    }
+
+    /**
+     * Return the mean think time in milliseconds, or 0 if there is none.
+     */
+    long meanThinkTime() {
+        long moves = moves();
+        return moves == 0 ? 0 : sum(THINK_SUM) / moves;
+    }
+
+    /**
+     * Return the longest think time in milliseconds.
+     */
+    long maxThinkTime() {
+        long result = 0;
+        for (long[] stripe : _stripes) {
+            result = Math.max(result, (long) SLOT.getOpaque(stripe,
+                                                            THINK_MAX));
+        }
+        return result;
+    }
+
+    /**
+     * Return an upper bound on the PERCENT percentile of think time, in
+     * milliseconds: the upper end of the bucket containing it.
+     */
+    long thinkTimePercentile(int percent) {
+        long[] buckets = new long[NUM_BUCKETS];
+        long moves = 0;
+        for (int k = 0; k < NUM_BUCKETS; k += 1) {
+            buckets[k] = sum(BUCKETS + k);
+            moves += buckets[k];
+        }
+        long rank = (moves * percent + PERCENT - 1) / PERCENT, seen = 0;
+        for (int k = 0; k < NUM_BUCKETS; k += 1) {
+            seen += buckets[k];
+            if (seen >= rank && seen > 0) {
+                return k == 0 ? 0 : Math.min((1L << k) - 1, maxThinkTime());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return my values as lines of text.
+     */
+    String toText() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < NAMES.length; k += 1) {
+            result.append(String.format("%-12s %d%n", NAMES[k], count(k)));
+        }
+        result.append(String.format("%-12s %d moves, mean %d ms",
+                                    "think_time", moves(),
+                                    meanThinkTime()));
+        for (int p : PERCENTILES) {
+            result.append(String.format(", p%d <= %d ms", p,
+                                        thinkTimePercentile(p)));
+        }
+        result.append(String.format(", max %d ms%n", maxThinkTime()));
+        return result.toString();
+    }
+
+    /**
+     * Return my values as a JSON object.
+     */
+    String toJson() {
+        StringBuilder result = new StringBuilder("{");
+        for (int k = 0; k < NAMES.length; k += 1) {
+            result.append(String.format("\"%s\": %d, ", NAMES[k], count(k)));
+        }
+        result.append(String.format("\"think_time\": {\"moves\": %d,"
+                                    + " \"mean_ms\": %d", moves(),
+                                    meanThinkTime()));
+        for (int p : PERCENTILES) {
+            result.append(String.format(", \"p%d_ms\": %d", p,
+                                        thinkTimePercentile(p)));
+        }
+        result.append(String.format(", \"max_ms\": %d, \"buckets\": [",
+                                    maxThinkTime()));
+        for (int k = 0; k < NUM_BUCKETS; k += 1) {
+            result.append(k == 0 ? "" : ", ").append(sum(BUCKETS + k));
+        }
+        result.append("]}}");
+        return result.toString();
+    }
+
+    /**
+     * Return the current thread's stripe, creating it if needed.
+     */
+    private long[] stripe() {
+        return _stripe.get();
+    }
+
+    /**
+     * Add N to slot K of STRIPE, which belongs to the current thread.
+     */
+    private static void increment(long[] stripe, int k, long n) {
+        SLOT.setOpaque(stripe, k, (long) SLOT.getOpaque(stripe, k) + n);
+    }
+
+    /**
+     * Return the sum of slot K over all stripes.
+     */
+    private long sum(int k) {
+        long result = 0;
+        for (long[] stripe : _stripes) {
+            result += (long) SLOT.getOpaque(stripe, k);
+        }
+        return result;
+    }
+
+    /**
+     * The number of longs of padding on each side of a stripe, filling
+     * a cache line.
+     */
+    private static final int PAD = 8;
+
+    /**
+     * Layout of a stripe: the counters, the think-time buckets, and the
+     * sum and maximum of the think times, between the paddings.
+     */
+    private static final int COUNTERS = PAD,
+        BUCKETS = COUNTERS + EVALUATIONS + 1,
+        THINK_SUM = BUCKETS + NUM_BUCKETS,
+        THINK_MAX = THINK_SUM + 1,
+        STRIPE_SIZE = THINK_MAX + 1 + PAD;
+
+    /**
+     * Multiplier giving a percentage.
+     */
+    private static final long PERCENT = 100;
+
+    /**
+     * Access to the slots of stripes.
+     */
+    private static final VarHandle SLOT =
+        MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * The stripes of all threads that have recorded anything.
+     */
+    private final List<long[]> _stripes = new CopyOnWriteArrayList<>();
+
+    /**
+     * The stripe of each thread.
+     */
+    private final ThreadLocal<long[]> _stripe =
+        ThreadLocal.withInitial(() -> {
+            long[] stripe = new long[STRIPE_SIZE];
+            _stripes.add(stripe);
+            return stripe;
+        });
+
+}
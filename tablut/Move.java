@@ -2,10 +2,9 @@ package tablut;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import static tablut.Square.sq;
+import static tablut.Square.BOARD_SIZE;
 import static tablut.Square.NUM_SQUARES;
 import static tablut.Square.ROOK_SQUARES;
 import static tablut.Square.SQUARE_LIST;
@@ -21,15 +20,6 @@ import static tablut.Utils.*;
  */
 final class Move {
 
-    /**
-     * The syntax for a move, using either forms CR-C (horizontal moves)
-     * or CR-R (vertical moves), where C is a column letter (a-i or A-I) and
-     * R is a row number (1-9).
-     */
-    static final Pattern MOVE_PATTERN =
-            Pattern.compile(String.format(
-                    "(([a-i])([1-9]))-(?:([a-i])|([1-9]))"));
-
     /**
      * Return the square moved from.
      */
@@ -61,29 +51,71 @@ final class Move {
 
     /**
      * Return the Move denoted by STR, if STR denotes a move with
-     * valid syntax, and null otherwise.
+     * valid syntax, and null otherwise.  The syntax is CR-C (horizontal
+     * moves) or CR-R (vertical moves), where C is a column letter (a-i)
+     * and R is a row number (1-9).
      */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
-            Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
-            } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
-            }
-            return mv(from, to);
+        if (!isGrammaticalMove(str)) {
+            return null;
         }
-        return null;
+        return mv(str, 0, false);
+    }
+
+    /**
+     * Return the Move denoted by the four characters of STR starting at
+     * START, which have the syntax of a move (ignoring case iff
+     * IGNORECASE), or null if it is not a valid move.
+     */
+    static Move mv(CharSequence str, int start, boolean ignoreCase) {
+        int col = colIndex(str.charAt(start), ignoreCase),
+            row = rowIndex(str.charAt(start + 1));
+        char dest = str.charAt(start + 3);
+        int toCol = colIndex(dest, ignoreCase);
+        Square from = sq(col, row);
+        Square to = toCol >= 0 ? sq(toCol, row) : sq(col, rowIndex(dest));
+        return mv(from, to);
     }
 
     /**
      * Return true iff STR has the right format for a Move.
      */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return isGrammaticalMove(str, 0, str.length(), false);
+    }
+
+    /**
+     * Return true iff STR[START .. END-1] has the right format for a
+     * Move, ignoring case iff IGNORECASE.
+     */
+    static boolean isGrammaticalMove(CharSequence str, int start, int end,
+                                     boolean ignoreCase) {
+        if (end - start != MOVE_LENGTH || str.charAt(start + 2) != '-') {
+            return false;
+        }
+        char dest = str.charAt(start + 3);
+        return colIndex(str.charAt(start), ignoreCase) >= 0
+            && rowIndex(str.charAt(start + 1)) >= 0
+            && (colIndex(dest, ignoreCase) >= 0 || rowIndex(dest) >= 0);
+    }
+
+    /**
+     * Return the column number denoted by C (a-i, or A-I if IGNORECASE),
+     * or -1 if it does not denote a column.
+     */
+    static int colIndex(char c, boolean ignoreCase) {
+        if (ignoreCase) {
+            c = Character.toLowerCase(c);
+        }
+        return c >= 'a' && c < 'a' + BOARD_SIZE ? c - 'a' : -1;
+    }
+
+    /**
+     * Return the row number denoted by C (1-9), or -1 if it does not
+     * denote a row.
+     */
+    static int rowIndex(char c) {
+        return c >= '1' && c < '1' + BOARD_SIZE ? c - '1' : -1;
     }
 
     @Override
@@ -167,7 +199,7 @@ final class Move {
      */
     private String _str;
     /**
-     * A utility Matcher for moves, using MOVE_PATTERN.
+     * The length of the printed form of a move.
      */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
+    private static final int MOVE_LENGTH = 4;
 }
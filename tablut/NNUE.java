@@ -0,0 +1,287 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.SQUARE_LIST;
+
+/**
+ * A small neural-network evaluator in the style of NNUE ("efficiently
+ * updatable neural network").  Its inputs are one-hot piece-square
+ * features: one for each kind of piece (white, black, king) on each
+ * square.  A single hidden layer computes, for each hidden unit, the
+ * bias plus the sum of the weights of the features present; this sum
+ * (the accumulator) changes only by the weights of the few features a
+ * move adds or removes, so each Board being searched keeps an
+ * Accumulator that it updates as moves are made and restores as they
+ * are undone.  The output is a weighted sum of the clamped hidden units,
+ * shifted right to give a score (positive being good for white).
+ *
+ * <p>Weights are read from a binary file of big-endian values: the int
+ * MAGIC, the hidden-layer size H (an int), the output shift (an int),
+ * NUM_INPUTS * H short input weights (grouped by feature), H short
+ * hidden biases, H short output weights, and an int output bias.
+ *
+ * @author chenyuanshan
+ */
+class NNUE {
+
+    /**
+     * The first word of a network file ("TNUE").
+     */
+    static final int MAGIC = 0x544e5545;
+
+    /**
+     * The number of input features.
+     */
+    static final int NUM_INPUTS = 3 * NUM_SQUARES;
+
+    /**
+     * Hidden units are clamped to the range 0 .. CLIP.
+     */
+    static final int CLIP = 127;
+
+    /**
+     * Bound on the magnitude of scores, keeping them well clear of the
+     * values the search uses for wins.
+     */
+    static final int MAX_SCORE = 1 << 20;
+
+    /**
+     * A network with HIDDEN hidden units, input weights INPUTWEIGHTS
+     * (grouped by feature), hidden biases HIDDENBIASES, output weights
+     * OUTPUTWEIGHTS, output bias OUTPUTBIAS, and output shift SHIFT.
+     */
+    NNUE(int hidden, int[] inputWeights, int[] hiddenBiases,
+         int[] outputWeights, int outputBias, int shift) {
+        if (inputWeights.length != NUM_INPUTS * hidden
+            || hiddenBiases.length != hidden
+            || outputWeights.length != hidden) {
+            throw new IllegalArgumentException("inconsistent network size");
+        }
+        _hidden = hidden;
+        _inputWeights = inputWeights;
+        _hiddenBiases = hiddenBiases;
+        _outputWeights = outputWeights;
+        _outputBias = outputBias;
+        _shift = shift;
+    }
+
+    /**
+     * Return the network stored in file NAME.
+     */
+    static NNUE load(String name) throws IOException {
+        try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(
+                 new FileInputStream(name)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a network file: " + name);
+            }
+            int hidden = in.readInt();
+            int shift = in.readInt();
+            if (hidden <= 0 || shift < 0) {
+                throw new IOException("bad network header: " + name);
+            }
+            int[] inputWeights = readShorts(in, NUM_INPUTS * hidden);
+            int[] hiddenBiases = readShorts(in, hidden);
+            int[] outputWeights = readShorts(in, hidden);
+            int outputBias = in.readInt();
+            return new NNUE(hidden, inputWeights, hiddenBiases,
+                            outputWeights, outputBias, shift);
+        }
+    }
+
+    /**
+     * Write me to file NAME in the format read by load.
+     */
+    void save(String name) throws IOException {
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_hidden);
+            out.writeInt(_shift);
+            writeShorts(out, _inputWeights);
+            writeShorts(out, _hiddenBiases);
+            writeShorts(out, _outputWeights);
+            out.writeInt(_outputBias);
+        }
+    }
+
+    /**
+     * Return an array of the next N shorts from IN.
+     */
+    private static int[] readShorts(DataInputStream in, int n)
+        throws IOException {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = in.readShort();
+        }
+        return result;
+    }
+
+    /**
+     * Write VALUES to OUT as shorts.
+     */
+    private static void writeShorts(DataOutputStream out, int[] values)
+        throws IOException {
+        for (int v : values) {
+            out.writeShort(v);
+        }
+    }
+
+    /**
+     * Return the input feature for piece P (not EMPTY) on square S.
+     */
+    static int feature(Piece p, Square s) {
+        int kind = p == KING ? 2 : p == WHITE ? 0 : 1;
+        return kind * NUM_SQUARES + s.index();
+    }
+
+    /**
+     * Return a new accumulator for me, initialized from BOARD.
+     */
+    Accumulator newAccumulator(Board board) {
+        Accumulator result = new Accumulator();
+        result.refresh(board);
+        return result;
+    }
+
+    /**
+     * Return the value of the position whose accumulator is ACC.
+     */
+    int evaluate(Accumulator acc) {
+        int sum = OPS.clippedDot(acc._values, _outputWeights, CLIP);
+        int score = (sum + _outputBias) >> _shift;
+        return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+    }
+
+    /**
+     * The hidden-layer sums of a network for one Board, with a stack of
+     * saved sums for undoing moves.
+     */
+    class Accumulator {
+
+        /**
+         * Recompute my sums from scratch for the pieces on BOARD, and
+         * discard the saved sums.
+         */
+        void refresh(Board board) {
+            System.arraycopy(_hiddenBiases, 0, _values, 0, _hidden);
+            for (Square s : SQUARE_LIST) {
+                Piece p = board.get(s);
+                if (p != EMPTY) {
+                    add(p, s);
+                }
+            }
+            _depth = 0;
+        }
+
+        /**
+         * Account for piece P being placed on S.
+         */
+        void add(Piece p, Square s) {
+            OPS.add(_values, _inputWeights, feature(p, s) * _hidden);
+        }
+
+        /**
+         * Account for piece P being removed from S.
+         */
+        void remove(Piece p, Square s) {
+            OPS.subtract(_values, _inputWeights, feature(p, s) * _hidden);
+        }
+
+        /**
+         * Save my current sums, to be restored by pop.
+         */
+        void push() {
+            if (_depth == _saved.length) {
+                _saved = Arrays.copyOf(_saved, 2 * _depth);
+            }
+            if (_saved[_depth] == null) {
+                _saved[_depth] = new int[_hidden];
+            }
+            System.arraycopy(_values, 0, _saved[_depth], 0, _hidden);
+            _depth += 1;
+        }
+
+        /**
+         * Restore the sums saved by the matching push, if any.
+         */
+        void pop() {
+            if (_depth > 0) {
+                _depth -= 1;
+                System.arraycopy(_saved[_depth], 0, _values, 0, _hidden);
+            }
+        }
+
+        /**
+         * Discard all saved sums.
+         */
+        void clearHistory() {
+            _depth = 0;
+        }
+
+        /**
+         * Return a copy of my current sums.
+         */
+        int[] values() {
+            return _values.clone();
+        }
+
+        /**
+         * The current sums.
+         */
+        private final int[] _values = new int[_hidden];
+
+        /**
+         * Saved sums: _saved[0 .. _depth-1] are in use.
+         */
+        private int[][] _saved = new int[INITIAL_HISTORY][];
+
+        /**
+         * The number of saved sums.
+         */
+        private int _depth;
+    }
+
+    /**
+     * Initial size of an Accumulator's stack of saved sums.
+     */
+    private static final int INITIAL_HISTORY = 64;
+
+    /**
+     * The implementation of the vector operations.
+     */
+    private static final VectorOps OPS = VectorOps.best();
+
+    /**
+     * The number of hidden units.
+     */
+    private final int _hidden;
+
+    /**
+     * Input weights: the weights of feature F are
+     * _inputWeights[F * _hidden .. (F + 1) * _hidden - 1].
+     */
+    private final int[] _inputWeights;
+
+    /**
+     * Hidden biases and output weights, one per hidden unit.
+     */
+    private final int[] _hiddenBiases, _outputWeights;
+
+    /**
+     * The output bias and shift.
+     */
+    private final int _outputBias, _shift;
+
+}
@@ -0,0 +1,25 @@
+package tablut;
+
+/**
+ * A Reporter that discards everything reported to it.
+ *
+ * @author chenyuanshan
+ */
+class NullReporter implements Reporter {
+
+    @Override
+    public void reportError(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportNote(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportMove(Move move) {
+    }
+
+    @Override
+    public void reportSearchInfo(SearchInfo info) {
+    }
+}
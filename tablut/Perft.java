@@ -0,0 +1,127 @@
+package tablut;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Counts the positions reachable from a Board in a given number of
+ * moves ("perft"), using only legalMoves, makeMove, and undo.  A game
+ * that ends (by a win or a repeated position) before the full number of
+ * moves contributes no positions.  The counts check move generation,
+ * since any change to the Board that preserves the rules must preserve
+ * them, and the time taken measures the raw speed of making and
+ * unmaking moves.  The "divide" variant gives the count below each move
+ * from the starting position, which locates a discrepancy, and
+ * computes them in parallel on a fork/join pool, if given one.
+ *
+ * @author chenyuanshan
+ */
+class Perft {
+
+    /**
+     * Return the number of positions reached by sequences of DEPTH legal
+     * moves from BOARD, which is left as it was.
+     */
+    static long perft(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (board.winner() != null) {
+            return 0;
+        }
+        long result = 0;
+        for (Move m : board.legalMoves(board.turn())) {
+            board.makeMove(m);
+            result += perft(board, depth - 1);
+            board.undo();
+        }
+        return result;
+    }
+
+    /**
+     * Return perft(BOARD, DEPTH - 1) for the position after each move in
+     * MOVES, which must be legal in BOARD, as an array parallel to MOVES.
+     * The counts are computed by tasks run on POOL, each on its own copy
+     * of BOARD, which is not changed, or on the current thread if POOL
+     * is null.
+     */
+    static long[] divide(Board board, List<Move> moves, int depth,
+                         ForkJoinPool pool) {
+        long[] result = new long[moves.size()];
+        if (pool == null) {
+            Board copy = new Board(board);
+            for (int k = 0; k < result.length; k += 1) {
+                copy.makeMove(moves.get(k));
+                result[k] = perft(copy, depth - 1);
+                copy.undo();
+            }
+        } else if (!moves.isEmpty()) {
+            pool.invoke(new Divide(board, moves, depth, result,
+                                   0, moves.size()));
+        }
+        return result;
+    }
+
+    /**
+     * A task filling in part of the result of divide.
+     */
+    private static class Divide extends RecursiveAction {
+
+        /**
+         * A task setting COUNTS[LO .. HI-1] to perft(BOARD, DEPTH - 1)
+         * after each of MOVES[LO .. HI-1].
+         */
+        Divide(Board board, List<Move> moves, int depth, long[] counts,
+               int lo, int hi) {
+            _board = board;
+            _moves = moves;
+            _depth = depth;
+            _counts = counts;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                Board board = new Board(_board);
+                board.makeMove(_moves.get(_lo));
+                _counts[_lo] = perft(board, _depth - 1);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Divide(_board, _moves, _depth, _counts,
+                                     _lo, mid),
+                          new Divide(_board, _moves, _depth, _counts,
+                                     mid, _hi));
+            }
+        }
+
+        /**
+         * The position divided, which is only copied.
+         */
+        private final Board _board;
+
+        /**
+         * The moves from _board.
+         */
+        private final List<Move> _moves;
+
+        /**
+         * The depth of the count, including the moves in _moves.
+         */
+        private final int _depth;
+
+        /**
+         * The counts for each of _moves.
+         */
+        private final long[] _counts;
+
+        /**
+         * The range of _moves handled by this task.
+         */
+        private final int _lo, _hi;
+
+    }
+
+}
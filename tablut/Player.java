@@ -49,10 +49,36 @@ abstract class Player {
      * Return either a String denoting either a legal move for me
      * or another command (which may be invalid).  Always returns the
      * latter if board().turn() is not myPiece() or if board.winner()
-     * is not null.
+     * is not null.  Returns null if the move is abandoned by stopMove.
      */
     abstract String myMove();
 
+    /**
+     * Ask a call of myMove in progress on another thread to return as
+     * soon as possible: with the best move found so far if PLAY, and
+     * otherwise with null.  May be called repeatedly until myMove
+     * returns.  By default, does nothing.
+     */
+    void stopMove(boolean play) {
+    }
+
+    /**
+     * Stop any thinking I do between my moves, such as pondering, and
+     * wait for it to end.  Called when my game ends or I am replaced.
+     * By default, does nothing.
+     */
+    void stopPondering() {
+    }
+
+    /**
+     * Return a command that has been entered for me, without waiting,
+     * or null if there is none.  This is used to read commands while
+     * another player is thinking.  By default, returns null.
+     */
+    String pollCommand() {
+        return null;
+    }
+
     /**
      * My Controller.
      */
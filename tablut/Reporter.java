@@ -24,5 +24,12 @@ interface Reporter {
      */
     void reportMove(Move move);
 
+    /**
+     * Display INFO, the progress of a search in progress, as needed.
+     * This may be called on a thread other than the one searching or
+     * the one calling the other methods.
+     */
+    void reportSearchInfo(SearchInfo info);
+
 }
 
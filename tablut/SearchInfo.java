@@ -0,0 +1,92 @@
+package tablut;
+
+/**
+ * The progress of a search by an AI, as of the end of one iteration or
+ * partway through the next: the depth completed, the principal
+ * variation and its score found there, and the number of positions
+ * visited and time taken so far.
+ *
+ * @author chenyuanshan
+ */
+class SearchInfo {
+
+    /**
+     * Progress after completing depth DEPTH, with principal variation PV,
+     * having visited NODES positions in MILLIS milliseconds.
+     */
+    SearchInfo(int depth, Variation pv, long nodes, long millis) {
+        _depth = depth;
+        _pv = pv;
+        _nodes = nodes;
+        _millis = millis;
+    }
+
+    /**
+     * Return the depth completed.
+     */
+    int depth() {
+        return _depth;
+    }
+
+    /**
+     * Return the principal variation.
+     */
+    Variation pv() {
+        return _pv;
+    }
+
+    /**
+     * Return the number of positions visited.
+     */
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Return the time taken, in milliseconds.
+     */
+    long millis() {
+        return _millis;
+    }
+
+    /**
+     * Return the number of positions visited per second.
+     */
+    long nodesPerSecond() {
+        return _millis == 0 ? 0 : _nodes * MILLIS_PER_SECOND / _millis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("depth %d score %s nodes %d nps %d pv",
+                                    _depth,
+                                    Variation.scoreString(_pv.score()),
+                                    _nodes, nodesPerSecond()));
+        for (Move m : _pv.moves()) {
+            result.append(' ').append(m);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Milliseconds per second.
+     */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /**
+     * The depth reached.
+     */
+    private final int _depth;
+
+    /**
+     * The principal variation.
+     */
+    private final Variation _pv;
+
+    /**
+     * Positions visited and time taken.
+     */
+    private final long _nodes, _millis;
+
+}
@@ -0,0 +1,156 @@
+package tablut;
+
+/**
+ * Counters describing one search by an AI: positions visited, static
+ * evaluations, beta cutoffs, transposition-table use, depth, and time.
+ *
+ * @author chenyuanshan
+ */
+class SearchStats {
+
+    /**
+     * A new set of counters, all zero.
+     */
+    SearchStats() {
+    }
+
+    /**
+     * A copy of STATS.
+     */
+    SearchStats(SearchStats stats) {
+        nodes = stats.nodes;
+        evaluations = stats.evaluations;
+        cutoffs = stats.cutoffs;
+        firstMoveCutoffs = stats.firstMoveCutoffs;
+        hashProbes = stats.hashProbes;
+        hashHits = stats.hashHits;
+        depth = stats.depth;
+        score = stats.score;
+        ponderHit = stats.ponderHit;
+        ponderDepth = stats.ponderDepth;
+        _start = stats._start;
+        _elapsed = stats._elapsed;
+    }
+
+    /**
+     * Reset all counters to zero and start the clock.
+     */
+    void start() {
+        nodes = evaluations = cutoffs = firstMoveCutoffs = 0;
+        hashProbes = hashHits = 0;
+        depth = score = ponderDepth = 0;
+        ponderHit = false;
+        _elapsed = 0;
+        _start = System.nanoTime();
+    }
+
+    /**
+     * Stop the clock.
+     */
+    void stop() {
+        _elapsed = System.nanoTime() - _start;
+    }
+
+    /**
+     * Return the time between start and stop in milliseconds.
+     */
+    long millis() {
+        return _elapsed / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Return the number of nodes searched per second.
+     */
+    long nodesPerSecond() {
+        return _elapsed == 0 ? 0 : nodes * NANOS_PER_SECOND / _elapsed;
+    }
+
+    /**
+     * Return the percentage of cutoffs that occurred on the first move
+     * searched.
+     */
+    double firstMoveCutoffRate() {
+        return cutoffs == 0 ? 0.0 : PERCENT * firstMoveCutoffs / cutoffs;
+    }
+
+    @Override
+    public String toString() {
+        String hit = ponderHit
+            ? String.format("ponder hit at depth %d, ", ponderDepth) : "";
+        return hit + String.format("depth %d, %d nodes, %d evaluations, "
+                                   + "%d cutoffs (%.1f%% first move), "
+                                   + "%d/%d hash hits, %d ms, %d nodes/s",
+                                   depth, nodes, evaluations,
+                                   cutoffs, firstMoveCutoffRate(),
+                                   hashHits, hashProbes, millis(),
+                                   nodesPerSecond());
+    }
+
+    /**
+     * Number of positions visited.
+     */
+    long nodes;
+
+    /**
+     * Number of static evaluations.
+     */
+    long evaluations;
+
+    /**
+     * Number of beta cutoffs, and how many of them happened on the first
+     * move tried.
+     */
+    long cutoffs, firstMoveCutoffs;
+
+    /**
+     * Number of transposition-table lookups, and how many found an entry.
+     */
+    long hashProbes, hashHits;
+
+    /**
+     * Depth of the last completed iteration.
+     */
+    int depth;
+
+    /**
+     * Value of the position found by the last completed iteration
+     * (positive favoring white).  Meaningful only if depth is positive.
+     */
+    int score;
+
+    /**
+     * True iff the search carried on from one made while pondering, in
+     * which case depth and score include its work, but the other
+     * counters only the work done after the pondering stopped.
+     */
+    boolean ponderHit;
+
+    /**
+     * The depth reached while pondering, from which the search carried
+     * on, if ponderHit; otherwise 0.
+     */
+    int ponderDepth;
+
+    /**
+     * Conversion factors from nanoseconds.
+     */
+    private static final long
+        NANOS_PER_MILLI = 1000000L,
+        NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Multiplier giving a percentage.
+     */
+    private static final double PERCENT = 100.0;
+
+    /**
+     * Value of System.nanoTime when started.
+     */
+    private long _start;
+
+    /**
+     * Nanoseconds between start and stop.
+     */
+    private long _elapsed;
+
+}
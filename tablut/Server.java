@@ -0,0 +1,153 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A server hosting many games of Tablut at once.  It accepts connections
+ * on a TCP port of the local host; each connection is a session that
+ * speaks the same command language as the standard input of Main, with
+ * its own Controller (and so its own Board and players).  Sessions run
+ * on virtual threads when the Java runtime has them, and otherwise on
+ * platform threads with small stacks; either way an idle session costs
+ * little beyond its Board.  All searching is done on a fixed pool of
+ * threads shared by all sessions: the moves of automated players, their
+ * helper threads, and commands such as analyze and perft.  The number of
+ * sessions thus does not affect the load on the processors.  (Sessions
+ * may not turn on pondering, which would hold a search thread while the
+ * opponent thinks.)
+ *
+ * @author chenyuanshan
+ */
+class Server {
+
+    /**
+     * Stack size, in bytes, of session threads when virtual threads are
+     * not available.
+     */
+    static final long SESSION_STACK_SIZE = 256 * 1024;
+
+    /**
+     * Maximum number of connections waiting to be accepted.
+     */
+    static final int BACKLOG = 128;
+
+    /**
+     * A server on local port PORT (any free port if 0) whose automated
+     * players are created from AUTOPLAYERTEMPLATE, running at most
+     * SEARCHTHREADS searches at once.
+     */
+    Server(int port, Player autoPlayerTemplate, int searchThreads) {
+        _port = port;
+        _autoPlayerTemplate = autoPlayerTemplate;
+        _searchPool = Executors.newFixedThreadPool(searchThreads, r -> {
+            Thread thread = new Thread(r, "search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _sessionThreads = sessionThreads();
+    }
+
+    /**
+     * Accept and run sessions until an I/O error occurs on the listening
+     * socket.
+     */
+    void serve() throws IOException {
+        try (ServerSocket listener = listen()) {
+            System.out.printf("Listening on port %d%n",
+                              listener.getLocalPort());
+            serve(listener);
+        }
+    }
+
+    /**
+     * Return a socket listening on my port of the loopback address.
+     */
+    ServerSocket listen() throws IOException {
+        return new ServerSocket(_port, BACKLOG,
+                                InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Accept and run sessions on LISTENER until an I/O error occurs on
+     * it (as when it is closed).
+     */
+    void serve(ServerSocket listener) throws IOException {
+        while (true) {
+            Socket socket = listener.accept();
+            _sessionThreads.newThread(() -> session(socket)).start();
+        }
+    }
+
+    /**
+     * Run a session on SOCKET, closing it at the end.
+     */
+    private void session(Socket socket) {
+        try (socket;
+             PrintStream out =
+             new PrintStream(new BufferedOutputStream(
+                 socket.getOutputStream()), true)) {
+            Controller controller =
+                new Controller(new NullView(), null,
+                               new TextReporter(out, out),
+                               new TextPlayer(), _autoPlayerTemplate, false,
+                               new BufferedInputStream(
+                                   socket.getInputStream()),
+                               out);
+            controller.setSearchPool(_searchPool);
+            out.println(Main.GREETING);
+            controller.play();
+        } catch (IOException | IllegalStateException excp) {
+            /* The session ends. */
+        }
+    }
+
+    /**
+     * Return a factory for session threads: virtual threads if this
+     * runtime supports them, and otherwise daemon platform threads with
+     * stacks of SESSION_STACK_SIZE bytes.
+     */
+    private static ThreadFactory sessionThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                .getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException excp) {
+            return r -> {
+                Thread thread =
+                    new Thread(null, r, "session", SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * The port on which to listen.
+     */
+    private final int _port;
+
+    /**
+     * The template for automated players.
+     */
+    private final Player _autoPlayerTemplate;
+
+    /**
+     * The pool on which searches run.
+     */
+    private final ExecutorService _searchPool;
+
+    /**
+     * Creates the threads on which sessions run.
+     */
+    private final ThreadFactory _sessionThreads;
+
+}
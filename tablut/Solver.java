@@ -0,0 +1,298 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.*;
+
+/**
+ * A solver that tries to prove or disprove a forced win for the side to
+ * move, using depth-first proof-number search (df-pn).  Each position
+ * has a proof number (a lower bound on the number of positions that must
+ * still be shown to be wins to prove it a win for the attacker, the side
+ * to move at the root) and a disproof number (likewise for showing that
+ * it is not).  The search repeatedly descends to the most-proving
+ * position, within thresholds that let it stay in a subtree until that
+ * subtree's numbers exceed them.  Proof and disproof numbers are kept
+ * in a fixed-size hash table indexed by Board.hashKey, in which solved
+ * positions are preferred over unsolved ones.  The search gives up after
+ * visiting a given number of positions.
+ *
+ * @author chenyuanshan
+ */
+class Solver {
+
+    /**
+     * Results of solve: a win for the side to move was proven,
+     * disproven, or neither.
+     */
+    static final int PROVEN = 1, DISPROVEN = -1, UNKNOWN = 0;
+
+    /**
+     * The default log (base 2) of the number of table entries.
+     */
+    static final int DEFAULT_LOG_SIZE = 18;
+
+    /**
+     * The maximum number of moves in a line searched.  Lines reaching
+     * this depth are treated as not winning, which means that a
+     * disproof found when some line has reached it is not reported.
+     */
+    static final int MAX_DEPTH = 64;
+
+    /**
+     * A proof or disproof number meaning "infinite".
+     */
+    private static final int INF = 1 << 28;
+
+    /**
+     * A solver that visits at most NODELIMIT positions per call to
+     * solve, using a table of 2**LOGSIZE entries.
+     */
+    Solver(long nodeLimit, int logSize) {
+        _nodeLimit = nodeLimit;
+        int size = 1 << logSize;
+        _mask = size - 1;
+        _keys = new long[size];
+        _proof = new int[size];
+        _disproof = new int[size];
+        _used = new boolean[size];
+    }
+
+    /**
+     * Try to prove a win for the side to move on BOARD, which is not
+     * changed.  Returns PROVEN, DISPROVEN, or UNKNOWN (if the position
+     * limit was reached).  After PROVEN, line() gives a winning line.
+     */
+    int solve(Board board) {
+        board = new Board(board);
+        _attacker = board.turn();
+        _nodes = 0;
+        _aborted = _truncated = false;
+        _line = new ArrayList<>();
+        Arrays.fill(_used, false);
+        if (board.winner() != null) {
+            return board.winner() == _attacker ? PROVEN : DISPROVEN;
+        }
+        search(board, INF, INF, 0);
+        long key = board.hashKey();
+        int slot = find(key);
+        if (slot >= 0 && _proof[slot] == 0) {
+            extractLine(board);
+            return PROVEN;
+        } else if (slot >= 0 && _disproof[slot] == 0 && !_truncated) {
+            return DISPROVEN;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Return the winning line found by the last call to solve that
+     * returned PROVEN, starting with the attacker's move.
+     */
+    List<Move> line() {
+        return _line;
+    }
+
+    /**
+     * Return the number of positions visited by the last call to solve.
+     */
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Search BOARD, DEPTH moves from the root, until its proof number
+     * reaches THPN or its disproof number reaches THDN, or the position
+     * limit is reached.  BOARD is not in a finished game.
+     */
+    private void search(Board board, int thpn, int thdn, int depth) {
+        long key = board.hashKey();
+        int slot = find(key);
+        if (slot >= 0 && (_proof[slot] >= thpn || _disproof[slot] >= thdn)) {
+            return;
+        }
+        _nodes += 1;
+        if (_nodes > _nodeLimit) {
+            _aborted = true;
+            return;
+        }
+        boolean attacking = board.turn() == _attacker;
+        List<Move> moves = board.legalMoves(board.turn());
+        int n = moves.size();
+        long[] keys = new long[n];
+        int[] fixedProof = new int[n], fixedDisproof = new int[n];
+        boolean[] fixed = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves.get(i));
+            keys[i] = board.hashKey();
+            if (board.winner() != null || depth + 1 >= MAX_DEPTH) {
+                boolean won = board.winner() == _attacker;
+                _truncated |= board.winner() == null;
+                fixed[i] = true;
+                fixedProof[i] = won ? 0 : INF;
+                fixedDisproof[i] = won ? INF : 0;
+            }
+            board.undo();
+        }
+        while (true) {
+            int pn, dn, best, second, bestProof, bestDisproof;
+            pn = attacking ? INF : 0;
+            dn = attacking ? 0 : INF;
+            best = 0;
+            second = INF;
+            bestProof = bestDisproof = INF;
+            for (int i = 0; i < n; i += 1) {
+                int p, d;
+                int s = fixed[i] ? -1 : find(keys[i]);
+                if (fixed[i]) {
+                    p = fixedProof[i];
+                    d = fixedDisproof[i];
+                } else if (s >= 0) {
+                    p = _proof[s];
+                    d = _disproof[s];
+                } else {
+                    p = d = 1;
+                }
+                int v = attacking ? p : d;
+                if (v < (attacking ? pn : dn)) {
+                    second = attacking ? pn : dn;
+                    best = i;
+                    bestProof = p;
+                    bestDisproof = d;
+                } else if (v < second) {
+                    second = v;
+                }
+                if (attacking) {
+                    pn = min(pn, p);
+                    dn = min(INF, dn + d);
+                } else {
+                    pn = min(INF, pn + p);
+                    dn = min(dn, d);
+                }
+            }
+            store(key, pn, dn);
+            if (pn >= thpn || dn >= thdn || _aborted) {
+                return;
+            }
+            int childThpn, childThdn;
+            if (attacking) {
+                childThpn = min(thpn, second + 1);
+                childThdn = min(INF, thdn - dn + bestDisproof);
+            } else {
+                childThpn = min(INF, thpn - pn + bestProof);
+                childThdn = min(thdn, second + 1);
+            }
+            board.makeMove(moves.get(best));
+            search(board, childThpn, childThdn, depth + 1);
+            board.undo();
+        }
+    }
+
+    /**
+     * Set _line to a winning line from BOARD, a proven position, as far
+     * as the table allows.
+     */
+    private void extractLine(Board board) {
+        int made = 0;
+        while (board.winner() == null && made < MAX_DEPTH) {
+            Move next = null;
+            for (Move m : board.legalMoves(board.turn())) {
+                board.makeMove(m);
+                int slot = find(board.hashKey());
+                boolean proven = board.winner() == _attacker
+                    || board.winner() == null && slot >= 0
+                    && _proof[slot] == 0;
+                board.undo();
+                if (proven) {
+                    next = m;
+                    break;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            _line.add(next);
+            board.makeMove(next);
+            made += 1;
+        }
+    }
+
+    /**
+     * Return the table slot holding KEY, or -1 if there is none.
+     */
+    private int find(long key) {
+        int slot = (int) key & _mask;
+        return _used[slot] && _keys[slot] == key ? slot : -1;
+    }
+
+    /**
+     * Record proof number PN and disproof number DN for the position
+     * with hash KEY, unless that would displace a solved position with
+     * an unsolved one.
+     */
+    private void store(long key, int pn, int dn) {
+        int slot = (int) key & _mask;
+        boolean solved = pn == 0 || dn == 0;
+        if (_used[slot] && _keys[slot] != key && !solved
+            && (_proof[slot] == 0 || _disproof[slot] == 0)) {
+            return;
+        }
+        _used[slot] = true;
+        _keys[slot] = key;
+        _proof[slot] = pn;
+        _disproof[slot] = dn;
+    }
+
+    /**
+     * The maximum number of positions visited by solve.
+     */
+    private final long _nodeLimit;
+
+    /**
+     * Mask selecting a table slot from a key.
+     */
+    private final int _mask;
+
+    /**
+     * The hash keys of the positions in each slot.
+     */
+    private final long[] _keys;
+
+    /**
+     * The proof and disproof numbers of each slot.
+     */
+    private final int[] _proof, _disproof;
+
+    /**
+     * True for slots in use.
+     */
+    private final boolean[] _used;
+
+    /**
+     * The side trying to win.
+     */
+    private Piece _attacker;
+
+    /**
+     * Positions visited by the current call to solve.
+     */
+    private long _nodes;
+
+    /**
+     * True once the position limit has been reached.
+     */
+    private boolean _aborted;
+
+    /**
+     * True once some line has been cut off at MAX_DEPTH.
+     */
+    private boolean _truncated;
+
+    /**
+     * The winning line found.
+     */
+    private List<Move> _line = new ArrayList<>();
+
+}
@@ -0,0 +1,169 @@
+package tablut;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static tablut.Utils.*;
+
+/**
+ * A sequential probability ratio test (SPRT) between the two engines of
+ * a Tournament.  It plays pairs of games (each engine playing white
+ * once, from the same opening) until it can accept either hypothesis
+ * H0, that the first engine is ELO0 rating points stronger than the
+ * second, or H1, that it is ELO1 points stronger, with false-positive
+ * rate ALPHA and false-negative rate BETA.  The log-likelihood ratio
+ * (LLR) of H1 to H0 is estimated from the scores of the pairs (0, 1/2,
+ * or 1 for the first engine) using the usual normal approximation, so
+ * that the correlation between the two games of a pair is taken into
+ * account.
+ *
+ * @author chenyuanshan
+ */
+class Sprt {
+
+    /**
+     * The default error rates.
+     */
+    static final double DEFAULT_ALPHA = 0.05, DEFAULT_BETA = 0.05;
+
+    /**
+     * A test of hypotheses ELO0 against ELO1 with error rates ALPHA and
+     * BETA, playing the games of TOURNAMENT.
+     */
+    Sprt(Tournament tournament, double elo0, double elo1, double alpha,
+         double beta) {
+        if (elo0 >= elo1 || alpha <= 0 || alpha >= 1 || beta <= 0
+            || beta >= 1) {
+            throw error("bad SPRT parameters");
+        }
+        _tournament = tournament;
+        _score0 = expectedScore(elo0);
+        _score1 = expectedScore(elo1);
+        _lower = Math.log(beta / (1 - alpha));
+        _upper = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Play pairs of games on THREADS threads until a hypothesis is
+     * accepted or MAXGAMES games have been played, printing the LLR
+     * after each pair and the conclusion on standard output, and a
+     * record of each game on RECORDS if it is not null.  Return 1 if H1
+     * was accepted, -1 if H0 was, and 0 otherwise.
+     */
+    int run(int maxGames, int threads, PrintStream records) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Tournament.Game>> pending = new ArrayDeque<>();
+        int next, errors, result;
+        next = errors = result = 0;
+        try {
+            while (result == 0) {
+                while (next + 1 < maxGames && pending.size() < 2 * threads) {
+                    for (int k = 0; k < 2; k += 1) {
+                        final int index = next + k;
+                        pending.add(pool.submit(
+                            () -> _tournament.play(index)));
+                    }
+                    next += 2;
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                Tournament.Game white = Tournament.await(pending.poll()),
+                    black = Tournament.await(pending.poll());
+                if (records != null) {
+                    records.println(white);
+                    records.println(black);
+                }
+                if (white.winner() == null || black.winner() == null) {
+                    errors += 1;
+                    continue;
+                }
+                Tournament.Engine first = _tournament.first();
+                addPair((white.winningEngine() == first ? 1 : 0)
+                        + (black.winningEngine() == first ? 1 : 0));
+                double llr = llr();
+                System.out.printf("pairs %d: +%d =%d -%d llr %.2f"
+                                  + " (%.2f, %.2f)%n",
+                                  _pairs[0] + _pairs[1] + _pairs[2],
+                                  _pairs[2], _pairs[1], _pairs[0], llr,
+                                  _lower, _upper);
+                if (llr >= _upper) {
+                    result = 1;
+                } else if (llr <= _lower) {
+                    result = -1;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (errors > 0) {
+            System.out.printf("%d pairs with errors ignored%n", errors);
+        }
+        System.out.printf(result > 0 ? "H1 accepted%n"
+                          : result < 0 ? "H0 accepted%n"
+                          : "No decision%n");
+        return result;
+    }
+
+    /**
+     * Return the LLR of H1 to H0 given the pair scores so far.
+     */
+    double llr() {
+        int n = _pairs[0] + _pairs[1] + _pairs[2];
+        if (n == 0) {
+            return 0;
+        }
+        double mean = (0.5 * _pairs[1] + _pairs[2]) / n;
+        double variance = (0.25 * _pairs[1] + _pairs[2]) / n - mean * mean;
+        variance = Math.max(variance, MIN_VARIANCE);
+        return n * (_score1 - _score0) * (2 * mean - _score0 - _score1)
+            / (2 * variance);
+    }
+
+    /**
+     * Record that the first engine scored POINTS (0, 1, or 2) in a pair
+     * of games.
+     */
+    void addPair(int points) {
+        _pairs[points] += 1;
+    }
+
+    /**
+     * Return the expected score of a player ELO rating points stronger
+     * than its opponent.
+     */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / Tournament.ELO_SCALE));
+    }
+
+    /**
+     * Lower bound on the estimated variance of pair scores, so that
+     * runs of identical results do not give an infinite LLR.
+     */
+    private static final double MIN_VARIANCE = 1e-3;
+
+    /**
+     * The source of games.
+     */
+    private final Tournament _tournament;
+
+    /**
+     * Expected scores of the first engine under H0 and H1.
+     */
+    private final double _score0, _score1;
+
+    /**
+     * The LLR bounds for accepting H0 and H1.
+     */
+    private final double _lower, _upper;
+
+    /**
+     * The numbers of pairs in which the first engine scored 0, 1, and 2
+     * points.
+     */
+    private final int[] _pairs = new int[3];
+
+}
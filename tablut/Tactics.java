@@ -0,0 +1,364 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/**
+ * A runner of suites of tactical test positions.  A suite is a text
+ * file with one position per line, of the form
+ *
+ *     BOARD SIDE MOVE... # NAME
+ *
+ * where BOARD gives the contents of the 81 squares in the order of
+ * Square.SQUARE_LIST (as in Board.encodedBoard, without its leading
+ * side to move), SIDE is "white" or "black", the side to move, and the
+ * MOVEs are the moves accepted as solutions.  The comment, if any,
+ * names the position; blank lines and lines holding only a comment are
+ * ignored.  Each position is searched by an AI under a limit of nodes or
+ * time, and counts as solved if the move found is a solution, or if the
+ * search proved a win with a solution at the end of some iteration (a
+ * deeper iteration may prefer another, slower win, since the search does
+ * not score wins by their length).  Its time to solution is the time at
+ * which the search chose a solution at the end of an iteration and did
+ * not change its mind afterwards, or proved a win with it.  The
+ * positions are searched in parallel, each thread with its own AI, and
+ * the results are printed in the order of the suite, followed by the
+ * solve rate and mean time to solution, so that engine strength and
+ * speed can be tracked together.
+ *
+ * @author chenyuanshan
+ */
+public class Tactics {
+
+    /**
+     * The default time limit of a search, in milliseconds.
+     */
+    static final long DEFAULT_MILLIS = 1000;
+
+    /**
+     * Run a suite as directed by ARGS: --threads=N sets the number of
+     * threads (default the number of processors), --nodes=N or
+     * --time=MS the budget of each search (default DEFAULT_MILLIS
+     * milliseconds), --weights=FILE and --nnue=FILE the evaluator (as
+     * for Main), and the remaining argument names the suite.
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--threads={0,1} --nodes={0,1} --time={0,1}"
+                            + " --weights={0,1} --nnue={0,1} --={1}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Tactics [--threads=N]"
+                               + " [--nodes=N | --time=MS]"
+                               + " [--weights=FILE] [--nnue=FILE] SUITE");
+            System.exit(1);
+        }
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            long nodes = Long.MAX_VALUE, millis = DEFAULT_MILLIS;
+            if (options.contains("--threads")) {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+            }
+            if (options.contains("--nodes")) {
+                nodes = Long.parseLong(options.getFirst("--nodes"));
+                millis = Long.MAX_VALUE;
+            }
+            if (options.contains("--time")) {
+                millis = Long.parseLong(options.getFirst("--time"));
+            }
+            if (threads <= 0 || nodes <= 0 || millis <= 0) {
+                throw new NumberFormatException("values must be positive");
+            }
+            List<Position> suite;
+            try (BufferedReader in = new BufferedReader(
+                     new FileReader(options.getFirst("--")))) {
+                suite = read(in);
+            }
+            Tactics tactics =
+                new Tactics((AI) Main.autoPlayer(options), nodes, millis);
+            tactics.run(suite, threads, System.out);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A test position: a board and the moves that solve it.
+     */
+    static class Position {
+
+        /**
+         * A position named NAME, with board BOARD, solved by any of
+         * SOLUTIONS.
+         */
+        Position(String name, Board board, Set<Move> solutions) {
+            _name = name;
+            _board = board;
+            _solutions = solutions;
+        }
+
+        /**
+         * Return my name.
+         */
+        String name() {
+            return _name;
+        }
+
+        /**
+         * Return my board, which is not to be changed.
+         */
+        Board board() {
+            return _board;
+        }
+
+        /**
+         * Return true iff MOVE solves me.
+         */
+        boolean isSolution(Move move) {
+            return _solutions.contains(move);
+        }
+
+        /**
+         * Return my solutions, separated by spaces.
+         */
+        String solutions() {
+            StringBuilder result = new StringBuilder();
+            for (Move m : _solutions) {
+                result.append(result.length() == 0 ? "" : " ").append(m);
+            }
+            return result.toString();
+        }
+
+        /**
+         * My name.
+         */
+        private final String _name;
+
+        /**
+         * My board.
+         */
+        private final Board _board;
+
+        /**
+         * The moves that solve me.
+         */
+        private final Set<Move> _solutions;
+
+    }
+
+    /**
+     * Return the positions of the suite read from IN.  Positions without
+     * names are named by their line numbers.
+     */
+    static List<Position> read(BufferedReader in) throws IOException {
+        List<Position> result = new ArrayList<>();
+        int lineNum = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            lineNum += 1;
+            String name = "line " + lineNum;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                if (!line.substring(comment + 1).trim().isEmpty()) {
+                    name = line.substring(comment + 1).trim();
+                }
+                line = line.substring(0, comment);
+            }
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].isEmpty()) {
+                continue;
+            }
+            try {
+                result.add(parse(name, fields));
+            } catch (IllegalArgumentException excp) {
+                throw error("line %d: %s", lineNum, excp.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the position named NAME described by FIELDS, the fields of
+     * its line in a suite.
+     */
+    private static Position parse(String name, String[] fields) {
+        if (fields.length < 3) {
+            throw error("expected board, side to move, and solutions");
+        }
+        Piece side;
+        if (fields[1].equalsIgnoreCase(WHITE.toName())) {
+            side = WHITE;
+        } else if (fields[1].equalsIgnoreCase(BLACK.toName())) {
+            side = BLACK;
+        } else {
+            throw error("bad side to move: %s", fields[1]);
+        }
+        Board board = new Board();
+        board.setPosition(side + fields[0]);
+        if (board.winner() != null || board.gameOver()) {
+            throw error("game is over");
+        }
+        Set<Move> solutions = new LinkedHashSet<>();
+        for (int k = 2; k < fields.length; k += 1) {
+            Move move = Move.mv(fields[k]);
+            if (move == null || !board.isLegal(move)) {
+                throw error("illegal solution: %s", fields[k]);
+            }
+            solutions.add(move);
+        }
+        return new Position(name, board, solutions);
+    }
+
+    /**
+     * A runner using AIs created from TEMPLATE, each search stopping
+     * after MAXNODES positions or MILLIS milliseconds.
+     */
+    Tactics(AI template, long maxNodes, long millis) {
+        _template = template;
+        _maxNodes = maxNodes;
+        _millis = millis;
+    }
+
+    /**
+     * Search the positions of SUITE on THREADS threads, printing the
+     * result for each and then the totals on OUT.  Return the number
+     * of positions solved.
+     */
+    int run(List<Position> suite, int threads, PrintStream out) {
+        ThreadLocal<AI> ais = ThreadLocal.withInitial(
+            () -> (AI) _template.create(null, null));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> results = new ArrayList<>();
+        int solved = 0;
+        long totalMillis = 0;
+        try {
+            for (Position position : suite) {
+                results.add(pool.submit(() -> solve(ais.get(), position)));
+            }
+            for (int k = 0; k < suite.size(); k += 1) {
+                Position position = suite.get(k);
+                Result result = Tournament.await(results.get(k));
+                if (result.solvedAt >= 0) {
+                    solved += 1;
+                    totalMillis += result.solvedAt;
+                    out.printf("%d. %s: solved by %s in %d ms (depth %d)%n",
+                               k + 1, position.name(), result.move,
+                               result.solvedAt, result.depth);
+                } else {
+                    out.printf("%d. %s: failed with %s (solution %s)%n",
+                               k + 1, position.name(), result.move,
+                               position.solutions());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        out.printf("solved %d of %d (%.1f%%), mean time to solution"
+                   + " %d ms%n", solved, suite.size(),
+                   suite.isEmpty() ? 0.0 : PERCENT * solved / suite.size(),
+                   solved == 0 ? 0 : totalMillis / solved);
+        return solved;
+    }
+
+    /**
+     * The outcome of searching a position.
+     */
+    private static class Result {
+
+        /**
+         * The move found, or null if none.
+         */
+        private Move move;
+
+        /**
+         * The time to solution in milliseconds, or -1 if the position
+         * was not solved.
+         */
+        private long solvedAt = -1;
+
+        /**
+         * The depth reached, or the depth at which a win was proved.
+         */
+        private int depth;
+
+        /**
+         * True iff the search proved a win with a solution.
+         */
+        private boolean proven;
+
+    }
+
+    /**
+     * Search POSITION with AI and return the outcome.
+     */
+    private Result solve(AI ai, Position position) {
+        Result result = new Result();
+        Piece mover = position.board().turn();
+        Consumer<SearchInfo> progress = info -> {
+            Variation pv = info.pv();
+            if (result.proven) {
+                return;
+            } else if (!position.isSolution(pv.move())) {
+                result.solvedAt = -1;
+                return;
+            } else if (result.solvedAt < 0) {
+                result.solvedAt = info.millis();
+            }
+            if (isWin(pv.score(), mover)) {
+                result.proven = true;
+                result.move = pv.move();
+                result.depth = info.depth();
+            }
+        };
+        Move move = ai.bestMove(position.board(), _maxNodes, _millis,
+                                progress);
+        if (!result.proven) {
+            result.move = move;
+            result.depth = ai.stats().depth;
+            if (!position.isSolution(move)) {
+                result.solvedAt = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return true iff SCORE, as given by an AI, is a forced win for
+     * MOVER.
+     */
+    private static boolean isWin(int score, Piece mover) {
+        return mover == WHITE ? score >= AI.WILL_WIN_VALUE
+            : score <= -AI.WILL_WIN_VALUE;
+    }
+
+    /**
+     * Multiplier giving a percentage.
+     */
+    private static final double PERCENT = 100.0;
+
+    /**
+     * The template for the AIs used.
+     */
+    private final AI _template;
+
+    /**
+     * The budget of each search, in positions and milliseconds.
+     */
+    private final long _maxNodes, _millis;
+
+}
@@ -1,5 +1,7 @@
 package tablut;
 
+import java.io.PrintStream;
+
 /**
  * A Reporter that uses the standard output for messaeges.
  *
@@ -7,20 +9,62 @@ package tablut;
  */
 class TextReporter implements Reporter {
 
+    /**
+     * A reporter using the standard output and standard error.
+     */
+    TextReporter() {
+        this(System.out, System.err);
+    }
+
+    /**
+     * A reporter printing notes and moves on OUT and errors on ERR.
+     */
+    TextReporter(PrintStream out, PrintStream err) {
+        _out = out;
+        _err = err;
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
-        System.err.printf(fmt, args);
-        System.err.println();
+        if (_err != _out) {
+            _out.flush();
+        }
+        _err.printf(fmt, args);
+        _err.println();
     }
 
     @Override
     public void reportNote(String fmt, Object... args) {
-        System.out.printf("* " + fmt, args);
-        System.out.println();
+        _out.printf("* " + fmt, args);
+        _out.println();
     }
 
     @Override
     public void reportMove(Move move) {
-        System.out.printf("* %s%n", move);
+        _out.printf("* %s%n", move);
+    }
+
+    @Override
+    public void reportSearchInfo(SearchInfo info) {
+        if (_verbose) {
+            _out.printf("info %s%n", info);
+        }
+    }
+
+    /**
+     * Print the progress of searches iff VERBOSE (initially false).
+     */
+    void setVerbose(boolean verbose) {
+        _verbose = verbose;
     }
+
+    /**
+     * Destinations of notes and moves, and of errors.
+     */
+    private final PrintStream _out, _err;
+
+    /**
+     * True iff the progress of searches is printed.
+     */
+    private boolean _verbose;
 }
@@ -0,0 +1,237 @@
+package tablut;
+
+import static tablut.Utils.*;
+
+/**
+ * A scanner for the tokens of one command line.  A line is tokenized in
+ * place: the tokenizer keeps only positions in it, and keywords are
+ * compared without regard to case, so that reading a command allocates
+ * nothing unless it is in error.  Text from the first '#' on is a
+ * comment.  Tokens are separated by whitespace.  A Tokenizer is reused
+ * for successive lines, and so belongs to one thread at a time; there is
+ * no shared state between Tokenizers.
+ *
+ * <p>The methods that read numbers check only their syntax; if a number
+ * is too large, the error is reported by end, after the syntax of the
+ * whole line has been checked.
+ *
+ * @author chenyuanshan
+ */
+class Tokenizer {
+
+    /**
+     * Start tokenizing LINE.
+     */
+    void reset(String line) {
+        _line = line;
+        int end = line.indexOf('#');
+        _end = end < 0 ? line.length() : end;
+        _start = 0;
+        while (_start < _end && line.charAt(_start) <= ' ') {
+            _start += 1;
+        }
+        while (_end > _start && line.charAt(_end - 1) <= ' ') {
+            _end -= 1;
+        }
+        _pos = _start;
+        _overflow = false;
+    }
+
+    /**
+     * Return true iff the line (less comment) is empty.
+     */
+    boolean isEmpty() {
+        return _start == _end;
+    }
+
+    /**
+     * Return true iff there is another token.
+     */
+    boolean hasNext() {
+        skipSpace();
+        return _pos < _end;
+    }
+
+    /**
+     * If the next token is WORD (in lower case), ignoring case, skip it
+     * and return true.  Otherwise, return false.
+     */
+    boolean nextWord(String word) {
+        skipSpace();
+        int len = word.length();
+        if (tokenEnd() - _pos == len
+            && _line.regionMatches(true, _pos, word, 0, len)) {
+            _pos += len;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return true iff the next token has the syntax of a move.
+     */
+    boolean atMove() {
+        skipSpace();
+        return Move.isGrammaticalMove(_line, _pos, tokenEnd(), true);
+    }
+
+    /**
+     * Skip and return the next token as a move (ignoring case), or null
+     * if it has the syntax of a move but is not a valid one.
+     */
+    Move nextMove() {
+        if (!atMove()) {
+            throw badCommand();
+        }
+        Move result = Move.mv(_line, _pos, true);
+        _pos = tokenEnd();
+        return result;
+    }
+
+    /**
+     * Skip and return the next token as a square (ignoring case).
+     */
+    Square nextSquare() {
+        skipSpace();
+        if (tokenEnd() - _pos != 2) {
+            throw badCommand();
+        }
+        int col = Move.colIndex(_line.charAt(_pos), true),
+            row = Move.rowIndex(_line.charAt(_pos + 1));
+        if (col < 0 || row < 0) {
+            throw badCommand();
+        }
+        _pos += 2;
+        return Square.sq(col, row);
+    }
+
+    /**
+     * Skip and return the next token as a non-negative integer no
+     * larger than MAX.  A larger number makes end report that the
+     * number is too large.
+     */
+    long nextNumber(long max) {
+        skipSpace();
+        int end = tokenEnd();
+        if (_pos == end) {
+            throw badCommand();
+        }
+        long result = 0;
+        for (; _pos < end; _pos += 1) {
+            int digit = _line.charAt(_pos) - '0';
+            if (digit < 0 || digit > MAX_DIGIT) {
+                throw badCommand();
+            }
+            if (result > (max - digit) / RADIX) {
+                _overflow = true;
+            } else {
+                result = result * RADIX + digit;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Skip and return the next token as a decimal number of the form
+     * DIGITS[.[DIGITS]].
+     */
+    double nextDecimal() {
+        skipSpace();
+        int start = _pos, end = tokenEnd();
+        int k;
+        for (k = start; k < end && isDigit(_line.charAt(k)); k += 1) {
+            continue;
+        }
+        if (k == start) {
+            throw badCommand();
+        }
+        if (k < end && _line.charAt(k) == '.') {
+            for (k += 1; k < end && isDigit(_line.charAt(k)); k += 1) {
+                continue;
+            }
+        }
+        if (k != end) {
+            throw badCommand();
+        }
+        _pos = end;
+        return Double.parseDouble(_line.substring(start, end));
+    }
+
+    /**
+     * Check that all tokens have been read, and that no number read was
+     * too large.
+     */
+    void end() {
+        if (hasNext()) {
+            throw badCommand();
+        }
+        if (_overflow) {
+            throw error("number too large");
+        }
+    }
+
+    /**
+     * Return an exception reporting that the line is not a command.
+     */
+    IllegalArgumentException badCommand() {
+        return error("Bad command: %s",
+                     _line.substring(_start, _end).toLowerCase());
+    }
+
+    /**
+     * Skip whitespace at the current position.
+     */
+    private void skipSpace() {
+        while (_pos < _end && isSpace(_line.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /**
+     * Return the end of the token at the current position.
+     */
+    private int tokenEnd() {
+        int k;
+        for (k = _pos; k < _end && !isSpace(_line.charAt(k)); k += 1) {
+            continue;
+        }
+        return k;
+    }
+
+    /**
+     * Return true iff C separates tokens.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000b'
+            || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Return true iff C is a decimal digit.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * The base of numbers, and its largest digit.
+     */
+    private static final int RADIX = 10, MAX_DIGIT = 9;
+
+    /**
+     * The line being tokenized.
+     */
+    private String _line = "";
+
+    /**
+     * The bounds of the line without comment and surrounding whitespace,
+     * and the current position.
+     */
+    private int _start, _end, _pos;
+
+    /**
+     * True iff a number read was too large.
+     */
+    private boolean _overflow;
+
+}
@@ -0,0 +1,420 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/**
+ * A runner for matches between two automated engines, which plays many
+ * games at once on a pool of threads, without display or input.  Each
+ * game has its own Controller (and so its own Board and players).
+ * Games are played in pairs: both games of a pair start with the same
+ * few randomly chosen moves, and the engines swap colors between them,
+ * the first engine playing white in the first game of each pair.
+ *
+ * @author chenyuanshan
+ */
+class Tournament {
+
+    /**
+     * The default number of random moves made before the engines take
+     * over.
+     */
+    static final int DEFAULT_OPENING_PLIES = 4;
+
+    /**
+     * The default move limit of each game.
+     */
+    static final int DEFAULT_MOVE_LIMIT = 100;
+
+    /**
+     * A tournament between engines FIRST and SECOND, with games starting
+     * with OPENINGPLIES random moves chosen using SEED and having move
+     * limit MOVELIMIT (none if 0).
+     */
+    Tournament(Engine first, Engine second, long seed, int openingPlies,
+               int moveLimit) {
+        _first = first;
+        _second = second;
+        _seed = seed;
+        _openingPlies = openingPlies;
+        _moveLimit = moveLimit;
+    }
+
+    /**
+     * Return the first engine.
+     */
+    Engine first() {
+        return _first;
+    }
+
+    /**
+     * Return the second engine.
+     */
+    Engine second() {
+        return _second;
+    }
+
+    /**
+     * Play and return game number INDEX (numbering from 0).  This may be
+     * called concurrently from several threads.
+     */
+    Game play(int index) {
+        Engine white = index % 2 == 0 ? _first : _second,
+            black = index % 2 == 0 ? _second : _first;
+        List<String> opening = opening(index / 2);
+        List<String> setup = new ArrayList<>();
+        if (_moveLimit > 0) {
+            setup.add("limit " + _moveLimit);
+        }
+        setup.addAll(opening);
+        white.addClock("white", setup);
+        black.addClock("black", setup);
+        List<String> moves = new ArrayList<>(opening);
+        Controller controller =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), white.template(), false);
+        try {
+            Piece winner = controller.playGame(setup, white.template(),
+                                               black.template(), moves);
+            return new Game(index, white, black, winner, moves, null);
+        } catch (IllegalArgumentException excp) {
+            return new Game(index, white, black, null, moves,
+                            excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the random opening moves for pair of games PAIR.
+     */
+    private List<String> opening(int pair) {
+        Random random = new Random(_seed + pair);
+        Board board = new Board();
+        List<String> result = new ArrayList<>();
+        while (result.size() < _openingPlies && board.winner() == null) {
+            List<Move> legal = board.legalMoves(board.turn());
+            Move move = legal.get(random.nextInt(legal.size()));
+            board.makeMove(move);
+            result.add(move.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Play GAMES games on THREADS threads, printing a record of each
+     * game (in order) on RECORDS, if it is not null, and a summary of
+     * the results on standard output.
+     */
+    void run(int games, int threads, PrintStream records) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Game>> results = new ArrayList<>();
+        for (int k = 0; k < games; k += 1) {
+            final int index = k;
+            results.add(pool.submit(() -> play(index)));
+        }
+        pool.shutdown();
+        int firstWins, whiteWins, errors, minPlies, maxPlies;
+        long plies;
+        firstWins = whiteWins = errors = maxPlies = 0;
+        minPlies = Integer.MAX_VALUE;
+        plies = 0;
+        for (Future<Game> result : results) {
+            Game game = await(result);
+            if (records != null) {
+                records.println(game);
+            }
+            if (game.winner() == null) {
+                errors += 1;
+                continue;
+            }
+            firstWins += game.winningEngine() == _first ? 1 : 0;
+            whiteWins += game.winner() == WHITE ? 1 : 0;
+            plies += game.plies();
+            minPlies = Math.min(minPlies, game.plies());
+            maxPlies = Math.max(maxPlies, game.plies());
+        }
+        int played = games - errors;
+        System.out.printf("%d games, %d errors%n", games, errors);
+        if (played == 0) {
+            return;
+        }
+        double score = (double) firstWins / played;
+        System.out.printf("%s: %d wins (%.1f%%)%n", _first, firstWins,
+                          100 * score);
+        System.out.printf("%s: %d wins (%.1f%%)%n", _second,
+                          played - firstWins, 100 * (1 - score));
+        System.out.printf("white: %d wins, black: %d wins%n",
+                          whiteWins, played - whiteWins);
+        System.out.printf("plies: mean %.1f, min %d, max %d%n",
+                          (double) plies / played, minPlies, maxPlies);
+        if (firstWins > 0 && firstWins < played) {
+            System.out.printf("elo difference: %+.1f%n", elo(score));
+        }
+    }
+
+    /**
+     * Return the Elo rating difference corresponding to an expected
+     * SCORE (strictly between 0 and 1).
+     */
+    static double elo(double score) {
+        return ELO_SCALE * Math.log10(score / (1 - score));
+    }
+
+    /**
+     * Return the value of RESULT, waiting for it if necessary.
+     */
+    static <T> T await(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause().toString());
+        }
+    }
+
+    /**
+     * The settings of one side of a tournament.
+     */
+    static class Engine {
+
+        /**
+         * Return the engine described by SPEC, named NAME unless SPEC
+         * names it.  SPEC is a comma-separated list of settings: "ai"
+         * (the default) or "mcts" for the kind of player, "weights=FILE"
+         * and "nnue=FILE" for the evaluator of an "ai" player,
+         * "time=SECONDS[+INCREMENT]" for a clock, and "name=NAME".  An
+         * "mcts" player runs its playouts on one thread, since the
+         * games themselves already occupy a thread each.
+         */
+        static Engine parse(String name, String spec) {
+            boolean mcts = false;
+            Weights weights = Weights.DEFAULT;
+            NNUE network = null;
+            String time = null, increment = null;
+            for (String setting : spec.split(",")) {
+                setting = setting.trim();
+                String[] parts = setting.split("=", 2);
+                String key = parts[0];
+                String value = parts.length > 1 ? parts[1] : "";
+                try {
+                    if (setting.equals("ai") || setting.equals("mcts")) {
+                        mcts = setting.equals("mcts");
+                    } else if (key.equals("weights")) {
+                        weights = Weights.load(value);
+                    } else if (key.equals("nnue")) {
+                        network = NNUE.load(value);
+                    } else if (key.equals("name") && !value.isEmpty()) {
+                        name = value;
+                    } else if (key.equals("time")) {
+                        Matcher mat = TIME.matcher(value);
+                        if (!mat.matches()) {
+                            throw error("bad engine setting: %s", setting);
+                        }
+                        time = mat.group(1);
+                        increment = mat.group(2) == null ? "0"
+                            : mat.group(2);
+                    } else {
+                        throw error("bad engine setting: %s", setting);
+                    }
+                } catch (IOException excp) {
+                    throw error("Could not read evaluator: %s",
+                                excp.getMessage());
+                }
+            }
+            Player template;
+            if (mcts) {
+                MCTS player = new MCTS();
+                player.setThreads(1);
+                template = player;
+            } else {
+                template = new AI(weights, network);
+            }
+            return new Engine(name, template, time, increment);
+        }
+
+        /**
+         * An engine named NAME whose players are created from TEMPLATE,
+         * playing with TIME seconds plus INCREMENT seconds per move (no
+         * clock if TIME is null).
+         */
+        Engine(String name, Player template, String time,
+               String increment) {
+            _name = name;
+            _template = template;
+            _time = time;
+            _increment = increment;
+        }
+
+        /**
+         * Return my player template.
+         */
+        Player template() {
+            return _template;
+        }
+
+        /**
+         * Add to SETUP the command giving me my clock when playing
+         * COLOR, if I have one.
+         */
+        void addClock(String color, List<String> setup) {
+            if (_time != null) {
+                setup.add(String.format("time %s %s %s", color, _time,
+                                        _increment));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return _name;
+        }
+
+        /**
+         * My name.
+         */
+        private final String _name;
+
+        /**
+         * The template for my players.
+         */
+        private final Player _template;
+
+        /**
+         * My clock settings in seconds, or null.
+         */
+        private final String _time, _increment;
+    }
+
+    /**
+     * The record of one game.
+     */
+    static class Game {
+
+        /**
+         * Game number INDEX between engines WHITE and BLACK, won by
+         * WINNER after MOVES, or ending with ERROR (and null WINNER).
+         */
+        Game(int index, Engine white, Engine black, Piece winner,
+             List<String> moves, String error) {
+            _index = index;
+            _white = white;
+            _black = black;
+            _winner = winner;
+            _moves = moves;
+            _error = error;
+        }
+
+        /**
+         * Return the winning side, or null if the game ended in error.
+         */
+        Piece winner() {
+            return _winner;
+        }
+
+        /**
+         * Return the winning engine, or null if the game ended in error.
+         */
+        Engine winningEngine() {
+            return _winner == WHITE ? _white
+                : _winner == BLACK ? _black : null;
+        }
+
+        /**
+         * Return the number of moves made.
+         */
+        int plies() {
+            return _moves.size();
+        }
+
+        /**
+         * Returns "INDEX WHITE BLACK WINNER PLIES MOVE...", with WINNER
+         * "error" (and the error message as a comment) for a game that
+         * ended in error.
+         */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("%d %s %s %s %d", _index, _white,
+                                        _black,
+                                        _winner == null ? "error"
+                                        : _winner.toName(),
+                                        _moves.size()));
+            for (String move : _moves) {
+                result.append(' ').append(move);
+            }
+            if (_error != null) {
+                result.append(" # ").append(_error);
+            }
+            return result.toString();
+        }
+
+        /**
+         * My number.
+         */
+        private final int _index;
+
+        /**
+         * The engines playing white and black.
+         */
+        private final Engine _white, _black;
+
+        /**
+         * The winner, or null.
+         */
+        private final Piece _winner;
+
+        /**
+         * The moves made.
+         */
+        private final List<String> _moves;
+
+        /**
+         * The error ending the game, or null.
+         */
+        private final String _error;
+    }
+
+    /**
+     * Scale of the Elo rating system: a difference of this many points
+     * corresponds to odds of 10 to 1.
+     */
+    static final double ELO_SCALE = 400;
+
+    /**
+     * Pattern matching a "time" engine setting.
+     */
+    private static final Pattern TIME =
+        Pattern.compile("(\\d+(?:\\.\\d*)?)(?:\\+(\\d+(?:\\.\\d*)?))?");
+
+    /**
+     * The two engines.
+     */
+    private final Engine _first, _second;
+
+    /**
+     * Seed for the random openings.
+     */
+    private final long _seed;
+
+    /**
+     * The number of random opening moves.
+     */
+    private final int _openingPlies;
+
+    /**
+     * The move limit of each game, or 0 for none.
+     */
+    private final int _moveLimit;
+
+}
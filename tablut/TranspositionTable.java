@@ -0,0 +1,141 @@
+package tablut;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table of search results, indexed by the values of
+ * Board.hashKey.  Each slot holds one position's search depth, score,
+ * bound type, and best move.  A slot is overwritten by a result for a
+ * different position only if the new result was searched at least as
+ * deeply.  Storage is allocated when the first entry is stored, so that
+ * idle players cost little memory.
+ *
+ * @author chenyuanshan
+ */
+class TranspositionTable {
+
+    /**
+     * Bound types: the stored score is exact, a lower bound (the search
+     * failed high), or an upper bound (the search failed low).
+     */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /**
+     * The default log (base 2) of the number of slots.
+     */
+    static final int DEFAULT_LOG_SIZE = 16;
+
+    /**
+     * A new, empty table with 2**DEFAULT_LOG_SIZE slots.
+     */
+    TranspositionTable() {
+        this(DEFAULT_LOG_SIZE);
+    }
+
+    /**
+     * A new, empty table with 2**LOGSIZE slots.
+     */
+    TranspositionTable(int logSize) {
+        _mask = (1 << logSize) - 1;
+    }
+
+    /**
+     * Return the slot holding the entry for KEY, or -1 if there is none.
+     */
+    int find(long key) {
+        int slot = (int) key & _mask;
+        if (_moves != null && _moves[slot] != null && _keys[slot] == key) {
+            return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the search depth of the entry in SLOT.
+     */
+    int depth(int slot) {
+        return _depths[slot];
+    }
+
+    /**
+     * Return the score of the entry in SLOT.
+     */
+    int score(int slot) {
+        return _scores[slot];
+    }
+
+    /**
+     * Return the bound type (EXACT, LOWER, or UPPER) of the entry in SLOT.
+     */
+    int bound(int slot) {
+        return _bounds[slot];
+    }
+
+    /**
+     * Return the best move of the entry in SLOT.
+     */
+    Move move(int slot) {
+        return _moves[slot];
+    }
+
+    /**
+     * Record that the position with hash KEY, searched to DEPTH, has
+     * value SCORE of type BOUND, with best move MOVE (not null).
+     */
+    void store(long key, int depth, int score, int bound, Move move) {
+        if (_moves == null) {
+            int size = _mask + 1;
+            _keys = new long[size];
+            _scores = new int[size];
+            _depths = new int[size];
+            _bounds = new int[size];
+            _moves = new Move[size];
+            if (Events.enabled()) {
+                Events.TableEvent event = new Events.TableEvent();
+                event.slots = size;
+                event.commit();
+            }
+        }
+        int slot = (int) key & _mask;
+        if (_moves[slot] != null && _keys[slot] != key
+            && _depths[slot] > depth) {
+            return;
+        }
+        _keys[slot] = key;
+        _depths[slot] = depth;
+        _scores[slot] = score;
+        _bounds[slot] = bound;
+        _moves[slot] = move;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        if (_moves != null) {
+            Arrays.fill(_moves, null);
+        }
+    }
+
+    /**
+     * Mask selecting a slot number from a key.
+     */
+    private final int _mask;
+
+    /**
+     * The hash keys of the positions in each slot.
+     */
+    private long[] _keys;
+
+    /**
+     * The scores, depths, and bound types of the entries in each slot.
+     */
+    private int[] _scores, _depths, _bounds;
+
+    /**
+     * The best moves of the entries in each slot, or null for empty
+     * slots.  Null until the first entry is stored.
+     */
+    private Move[] _moves;
+
+}
@@ -0,0 +1,272 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ucb.util.CommandArgs;
+
+/**
+ * An offline tuner for the evaluation weights of AI.  It reads a file of
+ * positions, one per line, each given as a board encoding (as produced
+ * by Board.encodedBoard) followed by the final result of the game from
+ * which it came: 1 for a white win, 0 for a black win, or a fraction in
+ * between.  It then adjusts the weights to minimize the mean squared
+ * difference between those results and sigmoid(SCALE * value), where
+ * value is the static evaluation of the position.  Each epoch streams
+ * the file in batches, so the position set need not fit in memory, and
+ * the gradient of each batch is computed in parallel.
+ *
+ * @author chenyuanshan
+ */
+public class Tuner {
+
+    /**
+     * The scaling of evaluations before conversion to expected results.
+     */
+    static final double SCALE = 0.01;
+
+    /**
+     * The default number of passes over the position set.
+     */
+    static final int DEFAULT_EPOCHS = 100;
+
+    /**
+     * The number of positions read from the file at a time.
+     */
+    static final int BATCH_SIZE = 1 << 16;
+
+    /**
+     * Positions per task below which gradient tasks are not split.
+     */
+    static final int SPLIT_THRESHOLD = 1024;
+
+    /**
+     * Step size, in weight units, and moment decay rates of the
+     * optimizer (Adam).
+     */
+    private static final double
+        STEP = 1.0, DECAY1 = 0.9, DECAY2 = 0.999, EPSILON = 1e-12;
+
+    /**
+     * Tune weights as directed by ARGS: --epochs=N sets the number of
+     * epochs, --weights=FILE gives the starting weights (default those
+     * of Weights.DEFAULT), and the two remaining arguments name the
+     * position file and the file to receive the tuned weights.
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--epochs={0,1} --weights={0,1} --={2}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Tuner [--epochs=N]"
+                               + " [--weights=FILE] POSITIONS OUTPUT");
+            System.exit(1);
+        }
+        try {
+            Weights start = Weights.DEFAULT;
+            if (options.contains("--weights")) {
+                start = Weights.load(options.getFirst("--weights"));
+            }
+            int epochs = DEFAULT_EPOCHS;
+            if (options.contains("--epochs")) {
+                epochs = Integer.parseInt(options.getFirst("--epochs"));
+            }
+            Tuner tuner = new Tuner(options.get("--").get(0), start);
+            for (int k = 1; k <= epochs; k += 1) {
+                double error = tuner.epoch();
+                System.out.printf("epoch %d: error %.6f%n", k, error);
+            }
+            try (PrintStream out =
+                 new PrintStream(options.get("--").get(1))) {
+                tuner.weights().write(out);
+            }
+        } catch (IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A tuner for the positions in file POSITIONS, starting from
+     * weights START.
+     */
+    Tuner(String positions, Weights start) {
+        _positions = positions;
+        for (int k = 0; k < Weights.NUM_FEATURES; k += 1) {
+            _weights[k] = start.get(k);
+        }
+    }
+
+    /**
+     * Return the current weights, rounded.
+     */
+    Weights weights() {
+        int[] values = new int[Weights.NUM_FEATURES];
+        for (int k = 0; k < values.length; k += 1) {
+            values[k] = (int) Math.round(_weights[k]);
+        }
+        return new Weights(values);
+    }
+
+    /**
+     * Make one pass over the positions, computing the gradient of the
+     * error and adjusting the weights accordingly.  Return the mean
+     * squared error before the adjustment.
+     */
+    double epoch() throws IOException {
+        double[] total = new double[Weights.NUM_FEATURES + 2];
+        try (BufferedReader in =
+             new BufferedReader(new FileReader(_positions))) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while (true) {
+                String line = in.readLine();
+                if (line != null && !line.isBlank()) {
+                    batch.add(line);
+                }
+                if (batch.size() == BATCH_SIZE
+                    || line == null && !batch.isEmpty()) {
+                    double[] sums = POOL.invoke(
+                        new GradientTask(batch, 0, batch.size()));
+                    for (int k = 0; k < total.length; k += 1) {
+                        total[k] += sums[k];
+                    }
+                    batch.clear();
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+        }
+        double count = total[COUNT];
+        if (count == 0) {
+            throw new IOException("no usable positions");
+        }
+        _steps += 1;
+        for (int k = 0; k < Weights.NUM_FEATURES; k += 1) {
+            double g = total[k] / count;
+            _moment1[k] = DECAY1 * _moment1[k] + (1 - DECAY1) * g;
+            _moment2[k] = DECAY2 * _moment2[k] + (1 - DECAY2) * g * g;
+            double m = _moment1[k] / (1 - Math.pow(DECAY1, _steps));
+            double v = _moment2[k] / (1 - Math.pow(DECAY2, _steps));
+            _weights[k] -= STEP * m / (Math.sqrt(v) + EPSILON);
+        }
+        return total[ERROR] / count;
+    }
+
+    /**
+     * A task computing, for a range of lines of a batch of positions,
+     * the sums over positions of the gradient of the squared error
+     * (elements 0 to NUM_FEATURES - 1), the squared error (ERROR), and
+     * the number of positions used (COUNT).  Positions in which the game
+     * is already decided are skipped, since they are not evaluated with
+     * the weights.
+     */
+    private class GradientTask extends RecursiveTask<double[]> {
+
+        /**
+         * A task for lines LO to HI-1 of BATCH.
+         */
+        GradientTask(List<String> batch, int lo, int hi) {
+            _batch = batch;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (_hi - _lo > SPLIT_THRESHOLD) {
+                int mid = (_lo + _hi) >>> 1;
+                GradientTask left = new GradientTask(_batch, _lo, mid);
+                left.fork();
+                double[] sums =
+                    new GradientTask(_batch, mid, _hi).compute();
+                double[] other = left.join();
+                for (int k = 0; k < sums.length; k += 1) {
+                    sums[k] += other[k];
+                }
+                return sums;
+            }
+            double[] sums = new double[Weights.NUM_FEATURES + 2];
+            int[] features = new int[Weights.NUM_FEATURES];
+            Board board = new Board();
+            for (int i = _lo; i < _hi; i += 1) {
+                String[] fields = _batch.get(i).trim().split("\\s+");
+                double result;
+                try {
+                    board.setPosition(fields[0]);
+                    result = Double.parseDouble(fields[1]);
+                } catch (IllegalArgumentException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    continue;
+                }
+                Square king = board.kingPosition();
+                if (king == null || king.isEdge()) {
+                    continue;
+                }
+                AI.features(board, features);
+                double value = 0;
+                for (int k = 0; k < features.length; k += 1) {
+                    value += _weights[k] * features[k];
+                }
+                double p = 1.0 / (1.0 + Math.exp(-SCALE * value));
+                double diff = p - result;
+                double slope = 2 * diff * p * (1 - p) * SCALE;
+                for (int k = 0; k < features.length; k += 1) {
+                    sums[k] += slope * features[k];
+                }
+                sums[ERROR] += diff * diff;
+                sums[COUNT] += 1;
+            }
+            return sums;
+        }
+
+        /**
+         * The lines of positions.
+         */
+        private final List<String> _batch;
+
+        /**
+         * The range of lines handled by this task.
+         */
+        private final int _lo, _hi;
+    }
+
+    /**
+     * Indices of the squared error and the position count in the sums
+     * computed by GradientTask.
+     */
+    private static final int
+        ERROR = Weights.NUM_FEATURES, COUNT = Weights.NUM_FEATURES + 1;
+
+    /**
+     * The pool on which gradients are computed.
+     */
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    /**
+     * The name of the position file.
+     */
+    private final String _positions;
+
+    /**
+     * The current weights.
+     */
+    private final double[] _weights = new double[Weights.NUM_FEATURES];
+
+    /**
+     * Running averages of the gradient and of its square.
+     */
+    private final double[] _moment1 = new double[Weights.NUM_FEATURES],
+        _moment2 = new double[Weights.NUM_FEATURES];
+
+    /**
+     * Number of adjustments made.
+     */
+    private int _steps;
+
+}
@@ -1,5 +1,33 @@
 package tablut;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -90,7 +118,985 @@ public class UnitTest {
         cp.makeMove(Square.sq(7, 4), Square.sq(6, 4));
     }
 
+    /**
+     * Test that a copied board is independent of its model.
+     */
+    @Test
+    public void copytest() {
+        Board model = new Board();
+        String before = model.encodedBoard();
+        Board copy = new Board(model);
+        copy.makeMove(Square.sq(3, 0), Square.sq(3, 1));
+        assertEquals(before, model.encodedBoard());
+        copy.undo();
+        assertEquals(before, copy.encodedBoard());
+        assertEquals(model.hashKey(), copy.hashKey());
+    }
 
-}
+    /**
+     * Test that a side that has used up the move limit loses.
+     */
+    @Test
+    public void limittest() {
+        Board b = new Board();
+        b.setMoveLimit(1);
+        b.makeMove(Square.sq(3, 0), Square.sq(3, 1));
+        assertNull(b.winner());
+        b.makeMove(Square.sq(4, 2), Square.sq(1, 2));
+        assertEquals(Piece.WHITE, b.winner());
+        b.undo();
+        assertNull(b.winner());
+        b.init();
+        assertEquals(0, b.moveLimit());
+    }
+
+    /**
+     * Test that setPosition reproduces an encoded board.
+     */
+    @Test
+    public void positiontest() {
+        Board b = new Board();
+        b.makeMove(Square.sq(3, 0), Square.sq(3, 1));
+        Board c = new Board();
+        c.setPosition(b.encodedBoard());
+        assertEquals(b.encodedBoard(), c.encodedBoard());
+        assertEquals(b.hashKey(), c.hashKey());
+        assertEquals(Piece.WHITE, c.turn());
+    }
+
+    /**
+     * Test that the solver proves a win for a king that can reach the
+     * edge, and finds no win for the side that cannot stop it.
+     */
+    @Test
+    public void solvertest() {
+        char[] encoding = new char[Square.NUM_SQUARES + 1];
+        Arrays.fill(encoding, '-');
+        encoding[1 + Square.sq(4, 3).index()] = 'K';
+        encoding[1 + Square.sq(0, 0).index()] = 'B';
+        encoding[1 + Square.sq(8, 8).index()] = 'B';
+        encoding[1 + Square.sq(1, 1).index()] = 'W';
+        Board b = new Board();
+        Solver solver = new Solver(1000, Solver.DEFAULT_LOG_SIZE);
+        encoding[0] = 'W';
+        b.setPosition(new String(encoding));
+        assertEquals(Solver.PROVEN, solver.solve(b));
+        b.makeMove(solver.line().get(0));
+        assertEquals(Piece.WHITE, b.winner());
+        encoding[0] = 'B';
+        b.setPosition(new String(encoding));
+        assertEquals(Solver.DISPROVEN, solver.solve(b));
+    }
+
+    /**
+     * Test that game records survive writing to a file and reading it
+     * back, and conversion to a text log and back.
+     */
+    @Test
+    public void gamerecordtest() throws IOException {
+        Random r = new Random(7);
+        Board b = new Board();
+        b.init();
+        GameRecord game = new GameRecord();
+        while (b.winner() == null && game.size() < 40) {
+            List<Move> moves = b.legalMoves(b.turn());
+            Move m = moves.get(r.nextInt(moves.size()));
+            game.add(m, game.size() - 20, game.size() % 3);
+            b.makeMove(m);
+        }
+        game.setWinner(b.winner());
+        String expected = b.encodedBoard();
+        File file = File.createTempFile("tablut", ".tgr");
+        file.deleteOnExit();
+        file.delete();
+        try (GameRecordWriter out =
+             new GameRecordWriter(file.getPath())) {
+            out.write(game);
+            out.write(new GameRecord());
+        }
+        GameRecord copy = new GameRecord();
+        try (GameRecordReader in = new GameRecordReader(file.getPath())) {
+            in.next(copy);
+            assertEquals(-20, copy.score(0));
+            assertEquals(1, copy.millis(1));
+            assertEquals(b.winner(), copy.winner());
+            copy.replay(b);
+            assertEquals(expected, b.encodedBoard());
+            in.next(copy);
+            assertEquals(0, copy.size());
+            assertFalse(in.hasNext());
+        }
+        StringWriter text = new StringWriter();
+        try (GameRecordReader in = new GameRecordReader(file.getPath())) {
+            LogConverter.toText(in, new PrintWriter(text));
+        }
+        file.delete();
+        try (GameRecordWriter out =
+             new GameRecordWriter(file.getPath())) {
+            assertEquals(1, LogConverter.toBinary(
+                new BufferedReader(new StringReader(text.toString())), out));
+        }
+        try (GameRecordReader in = new GameRecordReader(file.getPath())) {
+            in.next(copy);
+            copy.replay(b);
+            assertEquals(expected, b.encodedBoard());
+            assertEquals(-19, copy.score(1));
+        }
+    }
+
+    /**
+     * Test that the log of a game gives the score and time of each
+     * automated move in a comment that LogConverter reads back.
+     */
+    @Test
+    public void logcommenttest() throws IOException {
+        String script = "manual white\nauto black\nquit\n";
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(new ByteArrayOutputStream(), true);
+        Controller controller =
+            new Controller(new NullView(), new PrintStream(log, true),
+                           new TextReporter(out, out), new TextPlayer(),
+                           new AI(), false,
+                           new ByteArrayInputStream(script.getBytes()), out);
+        controller.play();
+        String[] lines = log.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[2].matches("\\S+  # score -?\\d+ time \\d+"));
+        File file = File.createTempFile("tablut", ".tgr");
+        file.deleteOnExit();
+        file.delete();
+        try (GameRecordWriter records =
+             new GameRecordWriter(file.getPath())) {
+            assertEquals(1, LogConverter.toBinary(
+                new BufferedReader(new StringReader(log.toString())),
+                records));
+        }
+        GameRecord game = new GameRecord();
+        try (GameRecordReader in = new GameRecordReader(file.getPath())) {
+            in.next(game);
+        }
+        file.delete();
+        assertEquals(1, game.size());
+        assertTrue(lines[2].contains(" score " + game.score(0) + " "));
+    }
+
+    /**
+     * Test looking up positions in a game database, including games
+     * appended after the index was built.
+     */
+    @Test
+    public void databasetest() throws IOException {
+        File file = File.createTempFile("tablut", ".tgr");
+        File index = new File(GameDatabase.indexName(file.getPath()));
+        file.deleteOnExit();
+        index.deleteOnExit();
+        file.delete();
+        Board b = new Board();
+        b.init();
+        Move first = b.legalMoves(Piece.BLACK).get(0),
+            second = b.legalMoves(Piece.BLACK).get(1);
+        GameRecord game = new GameRecord();
+        try (GameRecordWriter out = new GameRecordWriter(file.getPath())) {
+            game.add(first, GameRecord.NO_SCORE, GameRecord.NO_TIME);
+            game.setWinner(Piece.WHITE);
+            out.write(game);
+            out.write(game);
+        }
+        assertEquals(2, GameDatabase.update(file.getPath(), 2));
+        try (GameRecordWriter out = new GameRecordWriter(file.getPath())) {
+            game.clear();
+            game.add(second, GameRecord.NO_SCORE, GameRecord.NO_TIME);
+            game.setWinner(Piece.BLACK);
+            out.write(game);
+        }
+        assertEquals(1, GameDatabase.update(file.getPath(), 2));
+        try (GameDatabase db = new GameDatabase(file.getPath())) {
+            assertEquals(file.length(), db.covered());
+            List<GameDatabase.MoveStats> moves = db.query(b);
+            assertEquals(2, moves.size());
+            assertEquals(first, moves.get(0).move());
+            assertEquals(2, moves.get(0).wins(Piece.WHITE));
+            assertEquals(1, moves.get(1).wins(Piece.BLACK));
+            b.makeMove(second);
+            moves = db.query(b);
+            assertEquals(1, moves.size());
+            assertEquals(null, moves.get(0).move());
+        }
+        file.delete();
+        index.delete();
+    }
+
+    /**
+     * Test that the analyzer annotates each move of a game, flagging
+     * only losses above its threshold.
+     */
+    @Test
+    public void analyzertest() {
+        Board b = new Board();
+        b.init();
+        GameRecord game = new GameRecord();
+        for (int k = 0; k < 4; k += 1) {
+            Move m = b.legalMoves(b.turn()).get(0);
+            game.add(m, GameRecord.NO_SCORE, GameRecord.NO_TIME);
+            b.makeMove(m);
+        }
+        Analyzer analyzer = new Analyzer(new AI(), 500, Long.MAX_VALUE,
+                                         Long.MAX_VALUE);
+        AI ai = new AI();
+        String text = analyzer.annotate(ai, 3, 8, game);
+        String[] lines = text.split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("game 3 at 8: 4 moves, unfinished", lines[0]);
+        assertTrue(lines[1].startsWith("1 " + game.move(0) + " best "));
+        assertFalse(text.contains("blunder"));
+        assertEquals(text, analyzer.annotate(ai, 3, 8, game));
+    }
+
+    /**
+     * Test that the analyzer marks a move after the end of a game as
+     * such, rather than as illegal.
+     */
+    @Test
+    public void analyzerovertest() {
+        GameRecord game = new GameRecord();
+        for (String m : new String[] { "d1-b", "e3-a", "b1-d", "a3-e",
+                                       "e7-f" }) {
+            game.add(Move.mv(m), GameRecord.NO_SCORE, GameRecord.NO_TIME);
+        }
+        game.setWinner(Piece.BLACK);
+        String[] lines = new Analyzer(new AI(), 500, Long.MAX_VALUE,
+                                      Long.MAX_VALUE)
+            .annotate(new AI(), 0, 0, game).split("\n");
+        assertEquals(6, lines.length);
+        assertEquals("game 0 at 0: 5 moves, Black wins", lines[0]);
+        assertEquals("5 e7-f game already over", lines[5]);
+    }
+
+    /**
+     * Test that a "stop" command entered during a long timed search
+     * makes the automated player move at once.
+     */
+    @Test
+    public void stoptest() {
+        String script = "manual white\ntime black 600 0\nauto black\n"
+            + "stop\ndump\nquit\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(out, out),
+                           new TextPlayer(), new AI(), false,
+                           new ByteArrayInputStream(script.getBytes()), out);
+        controller.setInterruptible(true);
+        long start = System.currentTimeMillis();
+        controller.play();
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(1, controller.board().moveCount());
+        assertTrue(bytes.toString().contains("==="));
+    }
+
+    /**
+     * Test that when the opponent plays the reply an AI was pondering,
+     * its search carries on from the depth reached while pondering.
+     */
+    @Test
+    public void ponderhittest() throws InterruptedException {
+        AI ai = ponderingAI();
+        Move reply = ai.ponderReply();
+        Thread.sleep(PONDER_MILLIS);
+        SearchStats stats = replyAndMove(ai, reply);
+        assertTrue(stats.ponderHit);
+        assertTrue(stats.ponderDepth > 0);
+        assertTrue(stats.depth >= stats.ponderDepth);
+        assertTrue(stats.toString().startsWith("ponder hit at depth "));
+    }
+
+    /**
+     * Test that when the opponent plays a reply other than the one an
+     * AI was pondering, the pondered search is discarded.
+     */
+    @Test
+    public void pondermisstest() throws InterruptedException {
+        AI ai = ponderingAI();
+        Move expected = ai.ponderReply();
+        Thread.sleep(PONDER_MILLIS);
+        Move reply = null;
+        for (Move m : ai.board().legalMoves(Piece.BLACK)) {
+            if (!m.equals(expected)) {
+                reply = m;
+                break;
+            }
+        }
+        SearchStats stats = replyAndMove(ai, reply);
+        assertFalse(stats.ponderHit);
+        assertEquals(0, stats.ponderDepth);
+        assertFalse(stats.toString().contains("ponder"));
+    }
+
+    /**
+     * Return a timed white AI that has replied to a black opening move
+     * and has chosen the black reply it is pondering.
+     */
+    private static AI ponderingAI() throws InterruptedException {
+        String script = "ponder on\ntime white 10 0\n";
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(out, out),
+                           new TextPlayer(), new AI(), false,
+                           new ByteArrayInputStream(script.getBytes()), out);
+        controller.play();
+        AI ai = (AI) new AI().create(Piece.WHITE, controller);
+        Board b = controller.board();
+        b.makeMove(b.legalMoves(Piece.BLACK).get(0));
+        b.makeMove(Move.mv(ai.myMove()));
+        for (int i = 0; ai.ponderReply() == null; i += 1) {
+            assertTrue("no reply pondered", i < PONDER_POLLS);
+            Thread.sleep(1);
+        }
+        return ai;
+    }
+
+    /**
+     * Make REPLY on the board of AI, have AI move in reply, and return
+     * the statistics of its search.
+     */
+    private static SearchStats replyAndMove(AI ai, Move reply) {
+        ai.board().makeMove(reply);
+        assertNotNull(Move.mv(ai.myMove()));
+        ai.stopPondering();
+        return ai.stats();
+    }
+
+    /**
+     * Test that MCTS takes an immediate escape of the king.
+     */
+    @Test
+    public void mctsescapetest() throws IOException {
+        String suite = "-----B------B-W--B-W-B-W-W--B---W--B-B--K--B-B-----W-"
+            + "BB---W--B--B---------W-B---- white e5-1  # escape\n";
+        Tactics.Position position =
+            Tactics.read(new BufferedReader(new StringReader(suite))).get(0);
+        MCTS player = mctsPlayer(position.board(), 1);
+        assertEquals("e5-1", player.myMove());
+    }
+
+    /**
+     * Test that MCTS, stopped with a request to play, returns a legal
+     * move.
+     */
+    @Test
+    public void mctsstoptest() throws InterruptedException {
+        Board b = new Board();
+        b.init();
+        MCTS player = mctsPlayer(b, 1);
+        String[] move = new String[1];
+        Thread thread = new Thread(() -> move[0] = player.myMove());
+        thread.start();
+        Thread.sleep(MCTS_STOP_MILLIS);
+        player.stopMove(true);
+        thread.join();
+        assertTrue(b.isLegal(Move.mv(move[0])));
+    }
+
+    /**
+     * Test that MCTS returns a legal move on one thread and on several.
+     */
+    @Test
+    public void mctsthreadstest() {
+        Board b = new Board();
+        b.init();
+        b.makeMove(b.legalMoves(Piece.BLACK).get(0));
+        for (int threads : new int[] { 1, 3 }) {
+            MCTS player = mctsPlayer(b, threads);
+            assertTrue(b.isLegal(Move.mv(player.myMove())));
+        }
+    }
+
+    /**
+     * Return an MCTS player using THREADS threads for the side to move
+     * on a copy of BOARD.
+     */
+    private static MCTS mctsPlayer(Board board, int threads) {
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(out, out),
+                           new TextPlayer(), new AI(), false,
+                           new ByteArrayInputStream(new byte[0]), out);
+        controller.board().copy(board);
+        MCTS template = new MCTS();
+        template.setThreads(threads);
+        return (MCTS) template.create(board.turn(), controller);
+    }
+
+    /**
+     * Test the error messages for malformed commands, which are those
+     * printed before commands were parsed with a Tokenizer.
+     */
+    @Test
+    public void commanderrortest() {
+        String[][] cases = {
+            { "frob", "Bad command: frob" },
+            { "FROB  Bar   # comment", "Bad command: frob  bar" },
+            { "seed 99999999999999999999", "number too large" },
+            { "seed x", "Bad command: seed x" },
+            { "limit 99999999999", "number too large" },
+            { "limit -1", "Bad command: limit -1" },
+            { "analyze 0 2", "number of lines and depth must be positive" },
+            { "analyze 99999999999", "number too large" },
+            { "analyze 3 0", "number of lines and depth must be positive" },
+            { "solve 99999999999999999999", "number too large" },
+            { "ponder maybe", "Bad command: ponder maybe" },
+            { "manual green", "Bad command: manual green" },
+            { "time white 1 x", "Bad command: time white 1 x" },
+            { "toggle z9", "Bad command: toggle z9" },
+            { "d1-2-3", "Bad command: d1-2-3" },
+            { "d1-", "Bad command: d1-" },
+            { "d1-j", "Bad command: d1-j" },
+            { "a1-a1", "Bad command: a1-a1" },
+            { "z1-3", "Bad command: z1-3" },
+            { "d1 - 2", "Bad command: d1 - 2" },
+        };
+        for (String[] c : cases) {
+            String script = "manual white\n" + c[0] + "\nquit\n";
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(bytes, true);
+            Controller controller =
+                new Controller(new NullView(), null,
+                               new TextReporter(out, out),
+                               new TextPlayer(), new AI(), false,
+                               new ByteArrayInputStream(script.getBytes()),
+                               out);
+            controller.play();
+            assertTrue(c[0], bytes.toString().contains("Error: " + c[1]
+                                                       + "\n"));
+        }
+    }
+
+    /**
+     * Test which strings Move.mv accepts as moves.
+     */
+    @Test
+    public void movesyntaxtest() {
+        String[][] cases = {
+            { "d1-2", "d1-2" }, { "d1-f", "d1-f" }, { "d1-d2", null },
+            { "D1-2", null }, { "d1-F", null }, { "d1-1", null },
+            { "a1-a1", null }, { "d1-2 ", null }, { "d1-", null },
+            { "d1-j", null }, { "j1-2", null }, { "d0-2", null },
+            { "d1-0", null }, { "d1 2", null }, { "d1-2-3", null },
+            { "", null }, { "e5-e", null }, { "a1-i9", null },
+        };
+        for (String[] c : cases) {
+            Move move = Move.mv(c[0]);
+            assertEquals(c[0], c[1], move == null ? null : move.toString());
+        }
+    }
+
+    /**
+     * Test that a script run with the buffering of --batch produces
+     * exactly the output it produces without it.
+     */
+    @Test
+    public void batchtest() {
+        String script = "d1-2\ndump\nfrob\nundo\ndump\nlimit 2\n"
+            + "new\nmanual white\nf9-7\ne5-e\ndump\nquit\n";
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(),
+            batched = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(plain, true);
+        new Controller(new NullView(), null, new TextReporter(out, out),
+                       new TextPlayer(), new AI(), false,
+                       new ByteArrayInputStream(script.getBytes()), out)
+            .play();
+        out = Main.batchOutput(batched);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(out, out),
+                           new TextPlayer(), new AI(), false,
+                           new BufferedInputStream(
+                               new ByteArrayInputStream(script.getBytes()),
+                               Main.BATCH_BUFFER_SIZE),
+                           out);
+        controller.setAutoFlush(false);
+        controller.play();
+        out.flush();
+        assertTrue(plain.toString().contains("* "));
+        assertTrue(batched.toString(),
+                   Arrays.equals(plain.toByteArray(), batched.toByteArray()));
+    }
+
+    /**
+     * Test that the stats command reports the work of the last search
+     * by an automated player.
+     */
+    @Test
+    public void statstest() {
+        String script = "stats\nd1-2\nstats\nquit\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        new Controller(new NullView(), null, new TextReporter(out, out),
+                       new TextPlayer(), new AI(), false,
+                       new ByteArrayInputStream(script.getBytes()), out)
+            .play();
+        String output = bytes.toString();
+        assertTrue(output.contains("No search statistics."));
+        Matcher nodes = Pattern.compile("depth (\\d+), (\\d+) nodes")
+            .matcher(output);
+        assertTrue(output, nodes.find());
+        assertTrue(Integer.parseInt(nodes.group(1)) > 0);
+        assertTrue(Long.parseLong(nodes.group(2)) > 0);
+    }
+
+    /**
+     * Test that "analyze 3 2" prints, for each depth, three variations
+     * with distinct first moves.
+     */
+    @Test
+    public void analyzecommandtest() {
+        String script = "analyze 3 2\nquit\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        new Controller(new NullView(), null, new TextReporter(out, out),
+                       new TextPlayer(), new AI(), false,
+                       new ByteArrayInputStream(script.getBytes()), out)
+            .play();
+        Matcher line =
+            Pattern.compile("depth (\\d+)|\\s*\\d+\\. \\S+\\s+(\\S+)")
+            .matcher(bytes.toString());
+        List<List<String>> firstMoves = new ArrayList<>();
+        while (line.find()) {
+            if (line.group(1) != null) {
+                assertEquals(firstMoves.size() + 1,
+                             Integer.parseInt(line.group(1)));
+                firstMoves.add(new ArrayList<>());
+            } else {
+                firstMoves.get(firstMoves.size() - 1).add(line.group(2));
+            }
+        }
+        assertEquals(2, firstMoves.size());
+        for (List<String> moves : firstMoves) {
+            assertEquals(3, moves.size());
+            assertEquals(3, new HashSet<>(moves).size());
+        }
+    }
+
+    /**
+     * Test that the two games of a tournament pair start with the same
+     * opening, with the engines' colors swapped.
+     */
+    @Test
+    public void tournamentpairtest() {
+        final int plies = 4;
+        Tournament tournament =
+            new Tournament(Tournament.Engine.parse("first", "ai"),
+                           Tournament.Engine.parse("second", "ai"),
+                           42, plies, 10);
+        String[] game0 = tournament.play(0).toString().split(" "),
+            game1 = tournament.play(1).toString().split(" ");
+        assertEquals("first", game0[1]);
+        assertEquals("second", game0[2]);
+        assertEquals("second", game1[1]);
+        assertEquals("first", game1[2]);
+        assertFalse(game0[3].equals("error"));
+        assertFalse(game1[3].equals("error"));
+        final int firstMove = 5;
+        assertEquals(Arrays.asList(game0).subList(firstMove,
+                                                  firstMove + plies),
+                     Arrays.asList(game1).subList(firstMove,
+                                                  firstMove + plies));
+    }
+
+    /**
+     * Test that the board widget renders the last position it was given
+     * into an offscreen image.
+     */
+    @Test
+    public void rendertest() {
+        Board b = new Board();
+        b.init();
+        Move m = b.legalMoves(Piece.BLACK).get(0);
+        BoardWidget widget = new BoardWidget(new ArrayBlockingQueue<>(1));
+        int black = BoardWidget.BLACK_COLOR.getRGB(),
+            empty = BoardWidget.SQUARE_COLOR.getRGB();
+        BufferedImage image = widget.renderImage();
+        assertEquals(black, centerColor(image, m.from()));
+        assertEquals(empty, centerColor(image, m.to()));
+        b.makeMove(m);
+        widget.update(b);
+        image = widget.renderImage();
+        assertEquals(empty, centerColor(image, m.from()));
+        assertEquals(black, centerColor(image, m.to()));
+    }
+
+    /**
+     * Return the RGB color of the center of S in IMAGE, as rendered by
+     * BoardWidget.
+     */
+    private static int centerColor(BufferedImage image, Square s) {
+        int half = BoardWidget.SQUARE_SIDE / 2;
+        int x = s.col() * BoardWidget.SQUARE_SIDE + BoardWidget.OFFSET
+            + BoardWidget.MARGIN + half,
+            y = (BoardWidget.SIZE - s.row() - 1) * BoardWidget.SQUARE_SIDE
+            + BoardWidget.OFFSET + half;
+        return image.getRGB(x, y);
+    }
+
+    /**
+     * Test that a mailbox keeps only the latest value posted.
+     */
+    @Test
+    public void mailboxtest() {
+        Mailbox<String> box = new Mailbox<>();
+        assertEquals(null, box.take());
+        box.post("depth 1");
+        box.post("depth 2");
+        assertEquals("depth 2", box.take());
+        assertEquals(null, box.take());
+    }
+
+    /**
+     * Test that the benchmark positions are legal and that the node
+     * count of the benchmark does not depend on the AI's history.
+     */
+    @Test
+    public void benchtest() {
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        AI ai = new AI();
+        long nodes = Bench.run(ai, 2, out);
+        assertTrue(nodes > 0);
+        assertEquals(nodes, Bench.run(ai, 2, out));
+        assertEquals(nodes, Bench.run(new AI(), 2, out));
+    }
+
+    /**
+     * Test perft counts from the initial position, and that divide
+     * agrees with them and leaves the board alone.
+     */
+    @Test
+    public void perfttest() {
+        Board b = new Board();
+        assertEquals(1, Perft.perft(b, 0));
+        assertEquals(80, Perft.perft(b, 1));
+        assertEquals(4400, Perft.perft(b, 2));
+        String before = b.encodedBoard();
+        List<Move> moves = b.legalMoves(b.turn());
+        long[] counts = Perft.divide(b, moves, 2,
+                                     ForkJoinPool.commonPool());
+        assertEquals(4400, Arrays.stream(counts).sum());
+        assertEquals(before, b.encodedBoard());
+        assertEquals(0, b.moveCount());
+    }
+
+    /**
+     * Test reading a suite of tactical positions and solving it.
+     */
+    @Test
+    public void tacticstest() throws IOException {
+        String suite = "# a win in one\n\n"
+            + "-----B------B-W--B-W-B-W-W--B---W--B-B--K--B-B-----W-BB---W"
+            + "--B--B---------W-B---- white e5-1  # escape\n";
+        List<Tactics.Position> positions =
+            Tactics.read(new BufferedReader(new StringReader(suite)));
+        assertEquals(1, positions.size());
+        assertEquals("escape", positions.get(0).name());
+        assertEquals(Piece.WHITE, positions.get(0).board().turn());
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(1, new Tactics(new AI(), 1000, Long.MAX_VALUE)
+                     .run(positions, 2, out));
+        try {
+            Tactics.read(new BufferedReader(new StringReader(
+                suite.replace("e5-1", "e5-e"))));
+            fail("illegal solution accepted");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().startsWith("line 3:"));
+        }
+    }
+
+    /**
+     * Test that a larger budget does not turn a solved position into a
+     * failure when a deeper search prefers a slower win.
+     */
+    @Test
+    public void tacticsbudgettest() throws IOException {
+        String suite = "B--BB--------B--B-----WWB-----------B-B-KW--BB-WWW----"
+            + "---BW-B-------------W-BB-B- white e5-4  # win in two\n";
+        List<Tactics.Position> positions =
+            Tactics.read(new BufferedReader(new StringReader(suite)));
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        for (long nodes : new long[] { 10000, 100000, 1000000 }) {
+            assertEquals(1, new Tactics(new AI(), nodes, Long.MAX_VALUE)
+                         .run(positions, 1, out));
+        }
+    }
+
+    /**
+     * Test that, once enabled, search iterations and table allocations
+     * are recorded by the flight recorder.
+     */
+    @Test
+    public void eventstest() throws IOException {
+        Events.enable();
+        File file = File.createTempFile("events", ".jfr");
+        file.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("tablut.Iteration");
+            recording.enable("tablut.TableAllocation");
+            recording.start();
+            new AI().bestMove(new Board(), 2);
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        int iterations = 0, tables = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(
+                 file.toPath())) {
+            String name = event.getEventType().getName();
+            if (name.equals("tablut.Iteration")) {
+                iterations += 1;
+                assertEquals(iterations, event.getInt("depth"));
+            } else if (name.equals("tablut.TableAllocation")) {
+                tables += 1;
+            }
+        }
+        assertEquals(2, iterations);
+        assertEquals(1, tables);
+    }
+
+    /**
+     * Test that metrics recorded on several threads are summed, and the
+     * think-time percentiles.
+     */
+    @Test
+    public void metricstest() throws InterruptedException {
+        Metrics metrics = new Metrics();
+        SearchStats stats = new SearchStats();
+        stats.nodes = 100;
+        stats.hashHits = 7;
+        Thread[] threads = new Thread[4];
+        for (int k = 0; k < threads.length; k += 1) {
+            final long millis = k * 10;
+            threads[k] = new Thread(() -> {
+                metrics.add(stats);
+                metrics.addThinkTime(millis);
+            });
+            threads[k].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400, metrics.count(Metrics.NODES));
+        assertEquals(28, metrics.count(Metrics.HASH_HITS));
+        assertEquals(0, metrics.count(Metrics.CUTOFFS));
+        assertEquals(4, metrics.moves());
+        assertEquals(15, metrics.meanThinkTime());
+        assertEquals(30, metrics.maxThinkTime());
+        assertEquals(15, metrics.thinkTimePercentile(50));
+        assertEquals(30, metrics.thinkTimePercentile(99));
+        assertTrue(metrics.toJson().startsWith("{\"nodes\": 400, "));
+    }
+
+    /**
+     * Test that a clock gains its increment after a move, and that
+     * resetting it stops it with its initial time.
+     */
+    @Test
+    public void clocktest() {
+        Clock clock = new Clock(1000, 100);
+        clock.start();
+        assertTrue(clock.running());
+        clock.stop();
+        assertFalse(clock.running());
+        assertTrue(clock.remaining() > 1000 && clock.remaining() <= 1100);
+        clock.start();
+        clock.reset();
+        assertFalse(clock.running());
+        assertEquals(1000, clock.remaining());
+    }
+
+    /**
+     * Test that a server session may not turn on pondering, so that an
+     * automated player waiting for its opponent cannot hold the only
+     * search thread while a second session's player needs it.
+     */
+    @Test
+    public void serverpondertest() throws IOException {
+        Server server = new Server(0, new AI(), 1);
+        Board b = new Board();
+        b.init();
+        Move move = b.legalMoves(Piece.BLACK).get(0);
+        try (ServerSocket listener = server.listen();
+             Socket first = connect(listener);
+             Socket second = connect(listener)) {
+            startServing(server, listener);
+            BufferedReader in1 = reader(first), in2 = reader(second);
+            PrintStream out1 = writer(first), out2 = writer(second);
+            out1.println("ponder on");
+            readUntil(in1, "pondering is not available");
+            out1.println(move);
+            readUntil(in1, "* ");
+            out2.println(move);
+            readUntil(in2, "* ");
+        }
+    }
+
+    /**
+     * Test that each server session greets its own client and plays on
+     * its own board, with its output going only to its own socket.
+     */
+    @Test
+    public void serversessionstest() throws IOException {
+        Server server = new Server(0, new AI(), 1);
+        Board b1 = new Board(), b2 = new Board();
+        b1.init();
+        b2.init();
+        List<Move> moves = b1.legalMoves(Piece.BLACK);
+        b1.makeMove(moves.get(0));
+        b2.makeMove(moves.get(1));
+        try (ServerSocket listener = server.listen();
+             Socket first = connect(listener);
+             Socket second = connect(listener)) {
+            startServing(server, listener);
+            BufferedReader in1 = reader(first), in2 = reader(second);
+            PrintStream out1 = writer(first), out2 = writer(second);
+            assertEquals(Main.GREETING, in1.readLine());
+            assertEquals(Main.GREETING, in2.readLine());
+            out1.printf("manual white%n%s%ndump%n", moves.get(0));
+            out2.printf("manual white%n%s%ndump%n", moves.get(1));
+            assertEquals(b2.toString(), readDump(in2));
+            assertEquals(b1.toString(), readDump(in1));
+        }
+    }
+
+    /**
+     * Read the output of a dump command from IN, and return the board it
+     * shows.
+     */
+    private static String readDump(BufferedReader in) throws IOException {
+        String before = readUntil(in, "===");
+        assertFalse(before.contains("* "));
+        String dump = readUntil(in, "===");
+        return dump.substring(0, dump.length() - "===\n".length());
+    }
+
+    /**
+     * Run SERVER on LISTENER in the background until LISTENER is
+     * closed.
+     */
+    private static void startServing(Server server, ServerSocket listener) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve(listener);
+            } catch (IOException excp) {
+                /* The listener was closed. */
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Return a connection to LISTENER whose reads time out after
+     * SESSION_TIMEOUT milliseconds.
+     */
+    private static Socket connect(ServerSocket listener) throws IOException {
+        Socket socket =
+            new Socket(listener.getInetAddress(), listener.getLocalPort());
+        socket.setSoTimeout(SESSION_TIMEOUT);
+        return socket;
+    }
 
+    /**
+     * Return a reader of the input from SOCKET.
+     */
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(socket.getInputStream()));
+    }
 
+    /**
+     * Return an autoflushing writer to SOCKET.
+     */
+    private static PrintStream writer(Socket socket) throws IOException {
+        return new PrintStream(socket.getOutputStream(), true);
+    }
+
+    /**
+     * Read lines from IN through the first that contains TEXT,
+     * returning them all, each followed by a newline.
+     */
+    private static String readUntil(BufferedReader in, String text)
+        throws IOException {
+        StringBuilder lines = new StringBuilder();
+        while (true) {
+            String line = in.readLine();
+            assertNotNull("expected " + text, line);
+            lines.append(line).append('\n');
+            if (line.contains(text)) {
+                return lines.toString();
+            }
+        }
+    }
+
+    /**
+     * Test the SPRT log-likelihood ratio: favoring H1 when the first
+     * engine wins more pairs, H0 when results are even.
+     */
+    @Test
+    public void sprttest() {
+        assertEquals(0.5, Sprt.expectedScore(0), 1e-9);
+        assertEquals(0.0, Tournament.elo(0.5), 1e-9);
+        Sprt even = new Sprt(null, 0, 20, 0.05, 0.05);
+        Sprt ahead = new Sprt(null, 0, 20, 0.05, 0.05);
+        for (int k = 0; k < 40; k += 1) {
+            even.addPair(k % 3);
+            ahead.addPair(k % 3 == 0 ? 1 : 2);
+        }
+        assertTrue(even.llr() < 0);
+        assertTrue(ahead.llr() > 0);
+    }
+
+    /**
+     * Test that a network accumulator updated move by move matches one
+     * computed from scratch, through captures and undos.
+     */
+    @Test
+    public void accumulatortest() {
+        final int hidden = 21;
+        Random r = new Random(42);
+        int[] inputs = new int[NNUE.NUM_INPUTS * hidden];
+        for (int i = 0; i < inputs.length; i += 1) {
+            inputs[i] = r.nextInt(200) - 100;
+        }
+        NNUE net = new NNUE(hidden, inputs, new int[hidden],
+                            new int[hidden], 0, 0);
+        Board b = new Board();
+        b.setAccumulator(net.newAccumulator(b));
+        int[][] moves = {
+            {8, 5, 5, 5}, {4, 5, 1, 5}, {8, 3, 5, 3}, {4, 3, 1, 3},
+            {5, 5, 4, 5}, {1, 3, 1, 0}, {5, 3, 4, 3}, {3, 4, 3, 7},
+        };
+        for (int[] m : moves) {
+            b.makeMove(Square.sq(m[0], m[1]), Square.sq(m[2], m[3]));
+            assertArrayEquals(net.newAccumulator(b).values(),
+                              b.accumulator().values());
+        }
+        for (int k = 0; k < moves.length; k += 1) {
+            b.undo();
+            assertArrayEquals(net.newAccumulator(b).values(),
+                              b.accumulator().values());
+        }
+    }
+
+    /**
+     * Milliseconds to wait for output from a server session before
+     * failing.
+     */
+    private static final int SESSION_TIMEOUT = 30000;
+
+    /**
+     * Milliseconds to let an AI ponder before replying to it, and the
+     * most milliseconds to wait for it to choose the reply it ponders.
+     */
+    private static final int PONDER_MILLIS = 500, PONDER_POLLS = 10000;
+
+    /**
+     * Milliseconds to let MCTS search before stopping it.
+     */
+    private static final int MCTS_STOP_MILLIS = 100;
+
+}
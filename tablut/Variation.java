@@ -0,0 +1,77 @@
+package tablut;
+
+import java.util.List;
+
+/**
+ * A line of play found by a search: a sequence of moves starting with a
+ * move from the searched position, and the score of that move (positive
+ * being good for white).
+ *
+ * @author chenyuanshan
+ */
+class Variation {
+
+    /**
+     * A variation consisting of MOVES, whose first move has value SCORE.
+     */
+    Variation(int score, List<Move> moves) {
+        _score = score;
+        _moves = moves;
+    }
+
+    /**
+     * Return the score of my first move.
+     */
+    int score() {
+        return _score;
+    }
+
+    /**
+     * Return my moves.  The list should not be modified.
+     */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    /**
+     * Return my first move.
+     */
+    Move move() {
+        return _moves.get(0);
+    }
+
+    /**
+     * Return SCORE in printed form: a signed number, or "+win" or "-win"
+     * for a forced win by white or black.
+     */
+    static String scoreString(int score) {
+        if (score >= AI.WILL_WIN_VALUE) {
+            return "+win";
+        } else if (score <= -AI.WILL_WIN_VALUE) {
+            return "-win";
+        } else {
+            return String.format("%+d", score);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%-6s", scoreString(_score)));
+        for (Move m : _moves) {
+            result.append(' ').append(m);
+        }
+        return result.toString();
+    }
+
+    /**
+     * The score of my first move.
+     */
+    private final int _score;
+
+    /**
+     * My moves.
+     */
+    private final List<Move> _moves;
+
+}
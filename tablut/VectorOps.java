@@ -0,0 +1,59 @@
+package tablut;
+
+/**
+ * Integer vector operations used by NNUE, implemented with scalar loops.
+ * The subclass SimdOps, built separately in the simd directory so that the
+ * default build does not need the incubating Vector API, implements them
+ * with that API; best() returns an instance of it when it is available.
+ *
+ * @author chenyuanshan
+ */
+class VectorOps {
+
+    /**
+     * Return the fastest available implementation: a SimdOps if it is
+     * on the class path and the jdk.incubator.vector module is present
+     * at run time (for example, with java --add-modules
+     * jdk.incubator.vector), and otherwise a VectorOps.
+     */
+    static VectorOps best() {
+        try {
+            return (VectorOps) Class.forName("tablut.SimdOps")
+                .getDeclaredConstructor().newInstance();
+        } catch (LinkageError | ReflectiveOperationException excp) {
+            return new VectorOps();
+        }
+    }
+
+    /**
+     * Add ROW[OFFSET .. OFFSET + ACC.length - 1] to ACC elementwise.
+     */
+    void add(int[] acc, int[] row, int offset) {
+        for (int i = 0; i < acc.length; i += 1) {
+            acc[i] += row[offset + i];
+        }
+    }
+
+    /**
+     * Subtract ROW[OFFSET .. OFFSET + ACC.length - 1] from ACC
+     * elementwise.
+     */
+    void subtract(int[] acc, int[] row, int offset) {
+        for (int i = 0; i < acc.length; i += 1) {
+            acc[i] -= row[offset + i];
+        }
+    }
+
+    /**
+     * Return the inner product of WEIGHTS with ACC, after clamping each
+     * element of ACC to the range 0 .. CLIP.
+     */
+    int clippedDot(int[] acc, int[] weights, int clip) {
+        int sum = 0;
+        for (int i = 0; i < acc.length; i += 1) {
+            sum += Math.min(Math.max(acc[i], 0), clip) * weights[i];
+        }
+        return sum;
+    }
+
+}
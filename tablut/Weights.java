@@ -0,0 +1,114 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static tablut.Utils.*;
+
+/**
+ * The weights of the features in an AI's static evaluation.  The value
+ * of a position is the sum over features of its weight times the
+ * feature's value (see AI.features), positive values favoring white.
+ * Weights may be read from and written to files with lines of the form
+ * "NAME VALUE"; blank lines and text following '#' are ignored.
+ *
+ * @author chenyuanshan
+ */
+class Weights {
+
+    /**
+     * The names of the features, in the order used by AI.features.
+     */
+    static final String[] NAMES = {
+        "king-attackers", "king-distance", "white-lost", "black-pieces"
+    };
+
+    /**
+     * The number of features.
+     */
+    static final int NUM_FEATURES = NAMES.length;
+
+    /**
+     * The default weights of the features named in NAMES.
+     */
+    private static final int[] DEFAULT_VALUES = { -40, 40, -20, -20 };
+
+    /**
+     * The default weights.
+     */
+    static final Weights DEFAULT = new Weights(DEFAULT_VALUES);
+
+    /**
+     * Weights with VALUES for the features named in NAMES.
+     */
+    Weights(int[] values) {
+        if (values.length != NUM_FEATURES) {
+            throw error("wrong number of weights");
+        }
+        _values = values.clone();
+    }
+
+    /**
+     * Return the weights in file NAME.  Features not mentioned there get
+     * their default weights.
+     */
+    static Weights load(String name) throws IOException {
+        int[] values = DEFAULT_VALUES.clone();
+        try (BufferedReader in = new BufferedReader(new FileReader(name))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                line = line.replaceFirst("#.*", "").trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                int k = Arrays.asList(NAMES).indexOf(fields[0]);
+                if (fields.length != 2 || k < 0) {
+                    throw new IOException("bad weight: " + line);
+                }
+                try {
+                    values[k] = Integer.parseInt(fields[1]);
+                } catch (NumberFormatException excp) {
+                    throw new IOException("bad weight: " + line);
+                }
+            }
+        }
+        return new Weights(values);
+    }
+
+    /**
+     * Write my weights to OUT in the format read by load.
+     */
+    void write(PrintStream out) {
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            out.printf("%s %d%n", NAMES[k], _values[k]);
+        }
+    }
+
+    /**
+     * Return the weight of feature K.
+     */
+    int get(int k) {
+        return _values[k];
+    }
+
+    /**
+     * Return the weighted sum of FEATURES.
+     */
+    int score(int[] features) {
+        int result = 0;
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            result += _values[k] * features[k];
+        }
+        return result;
+    }
+
+    /**
+     * The weights, indexed like NAMES.
+     */
+    private final int[] _values;
+
+}